@@ -0,0 +1,50 @@
+package startuphelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//How long it takes to hand a program to the operating system
+//The platform launchers are pointed at a command that does nothing, so only the spawning itself is measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileLauncherBenchmark {
+    private final FileLauncher launcher = new NoOpFileLauncher();
+
+    //A document, so it goes through the platform's 'open' command
+    @Benchmark
+    public Process openDocument() throws IOException {
+        return launcher.open("StartupHelperBenchmark.txt");
+    }
+
+    //An executable, which is started directly without a helper process
+    @Benchmark
+    public Process openExecutable() throws IOException {
+        return launcher.open(NoOpFileLauncher.NO_OP_EXECUTABLE);
+    }
+}
+
+
+//Runs the platform's 'do nothing' command instead of opening the file
+class NoOpFileLauncher extends FileLauncher {
+    private static final boolean IS_WINDOWS = System.getProperty("os.name").toLowerCase().indexOf("windows") != -1;
+    protected static final String NO_OP_EXECUTABLE = IS_WINDOWS ? System.getenv("SystemRoot") + "\\System32\\whoami.exe" : "/bin/true";
+
+    @Override
+    public String[] getCommand(String filename) {
+        if (IS_WINDOWS) return new String[] {"cmd", "/c", "rem"};
+        else return new String[] {"true"};
+    }
+}
@@ -0,0 +1,50 @@
+package startuphelper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//One tick of the launch loop: what the engine does when it wakes up, plus what the progress bar asks for every frame
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaunchSchedulerBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int lineCount;
+
+    private LaunchScheduler scheduler;
+    private long startTime;
+
+    @Setup
+    public void setUp() {
+        ProgramlistParserBenchmark.silenceDebugOutput();
+        LaunchPlan plan = ProgramlistParser.parse(ProgramlistParserBenchmark.createProgramlist(lineCount));
+        scheduler = new LaunchScheduler(plan.getInstructions(), plan.getStartWait(), plan.getBetweenWait(), plan.getParallelism());
+        startTime = System.currentTimeMillis();
+        scheduler.start(startTime);
+    }
+
+    //Nothing is due yet, so the scheduler stays in the same state and every tick does the same amount of work
+    @Benchmark
+    public void tick(Blackhole blackhole) {
+        long time = startTime + 1;
+        blackhole.consume(scheduler.pollReadyEntry(time));
+        blackhole.consume(scheduler.getNextDeadline(time));
+        LaunchEntry nextEntry = scheduler.getNextEntry();
+        blackhole.consume(nextEntry);
+        if (nextEntry != null) blackhole.consume(scheduler.getPercentageWaitLeft(nextEntry, time));
+    }
+}
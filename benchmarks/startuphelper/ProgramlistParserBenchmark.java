@@ -0,0 +1,118 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Loading the program list, which is what StartupHelper does before anything else
+//'parse' is a list that changed since the last run, 'loadCached' is the usual case where the cached plan can be used
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramlistParserBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int lineCount;
+
+    private List<String> lines;
+    private String content;
+    private File programlistFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        silenceDebugOutput();
+        lines = createProgramlist(lineCount);
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) builder.append(line).append('\n');
+        content = builder.toString();
+
+        programlistFile = File.createTempFile("StartupHelperBenchmark", ".txt");
+        Files.write(programlistFile.toPath(), content.getBytes());
+        //Create the cache, so 'loadCached' measures reading it back
+        ProgramlistParser.load(programlistFile.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File(programlistFile.getPath() + ProgramlistParser.CACHE_EXTENSION).delete();
+        programlistFile.delete();
+    }
+
+    @Benchmark
+    public LaunchPlan parse() throws IOException {
+        return ProgramlistParser.parse(ProgramlistParser.readLines(content));
+    }
+
+    @Benchmark
+    public LaunchPlan loadCached() throws IOException {
+        return ProgramlistParser.load(programlistFile.getPath());
+    }
+
+
+    //Creates a program list with a realistic mix of lines: settings, programs, questions, waits, attributes and comments
+    protected static List<String> createProgramlist(int lineCount) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("startWait 5");
+        lines.add("betweenWait 3");
+        lines.add("parallel 2");
+        for (int i = lines.size(); i < lineCount; i++) {
+            switch (i % 8) {
+                case 0:
+                    lines.add("#Comment " + i);
+                    break;
+                case 1:
+                    lines.add("?/usr/bin/program" + i);
+                    break;
+                case 2:
+                    lines.add("wait 1");
+                    break;
+                case 3:
+                    lines.add("/usr/bin/program" + i + " | name=program" + i + " group=group" + (i / 80));
+                    break;
+                case 4:
+                    lines.add("\"/home/user/My Documents/file " + i + ".txt\" | after=program" + (i - 1));
+                    break;
+                case 5:
+                    lines.add("/usr/bin/server" + i + " | ready=port:" + (1024 + i % 60000) + " timeout=30");
+                    break;
+                default:
+                    lines.add("/usr/bin/program" + i);
+            }
+        }
+        //The list is never shorter than asked for, but the settings always have to be there
+        return lines.subList(0, Math.max(lineCount, 3));
+    }
+
+    //Benchmarks shouldn't measure printing to the console
+    protected static void silenceDebugOutput() {
+        Util.setDebugLevel(Util.DEBUG_ALWAYS);
+        Util.setLogStream(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+}
@@ -0,0 +1,54 @@
+package startuphelper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//The small helpers the parser calls for almost every line
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+    //Fields instead of constants, so the JIT can't fold the calls away
+    public String settingLine = "betweenWait 10";
+    public String quotedLine = "\"/home/user/My Documents/file.txt\" | name=file after=editor";
+    public String number = "12345";
+    public String notANumber = "twelve";
+
+    @Setup
+    public void setUp() {
+        ProgramlistParserBenchmark.silenceDebugOutput();
+    }
+
+    @Benchmark
+    public String getArgumentFromLine() {
+        return Util.getArgumentFromLine(settingLine);
+    }
+
+    @Benchmark
+    public String getArgumentFromQuotedLine() {
+        return Util.getArgumentFromLine(quotedLine, 2);
+    }
+
+    @Benchmark
+    public int convertStringToInt() {
+        return Util.convertStringToInt(number, 0);
+    }
+
+    //Not a number, so this includes the exception and the error message
+    @Benchmark
+    public int convertInvalidStringToInt() {
+        return Util.convertStringToInt(notANumber, 0);
+    }
+}
@@ -0,0 +1,17 @@
+package startuphelper;
+
+import java.util.Map;
+
+//Ask the user whether to start a program first. Written as a '?' before the program
+class AskInstruction extends LaunchInstruction {
+    private static final long serialVersionUID = 1L;
+
+    AskInstruction(int lineNumber, String program, Map<String, String> attributes) {
+        super(lineNumber, program, attributes);
+    }
+
+    @Override
+    public String toString() {
+        return "?" + getProgram();
+    }
+}
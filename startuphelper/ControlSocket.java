@@ -0,0 +1,333 @@
+package startuphelper;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+//Lets scripts control a running StartupHelper through a Unix domain socket, with '-control' or '-control:[socket file]'
+//Every line sent is a command, and gets a line starting with 'OK' or 'ERROR' back:
+//  status                  'OK state=[counting|paused|finished] remaining=[count] waitleft=[ms, -1 if unknown] [held=[reason]] next=[program]'
+//  queue                   'OK [count]', followed by a line per program that hasn't been started yet, like '1 /usr/bin/chat'
+//  pause, resume           The same as the Pause and Resume button
+//  skip, start-now         The same as the Skip and Start button
+//  launch-entry [n|path]   Start the program with that number from 'queue' (or that location) right away
+//All connections are served by one thread with a selector, which sleeps until a client sends something
+//Only works where Java supports Unix domain sockets (Linux, macOS and Windows 10 or newer)
+public class ControlSocket implements Runnable {
+    private static final int MAX_LINE_LENGTH = 4096;
+    protected static final String DEFAULT_FILENAME = "startuphelper.sock";
+    private static final Set<PosixFilePermission> PRIVATE_DIRECTORY = PosixFilePermissions.fromString("rwx------"),
+            PRIVATE_SOCKET = PosixFilePermissions.fromString("rw-------");
+
+    private final Path socketPath;
+    private final LaunchEngine engine;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean isStopped = false;
+
+    protected ControlSocket(String socketLocation, LaunchEngine engine) {
+        socketPath = Paths.get(socketLocation).toAbsolutePath();
+        this.engine = engine;
+    }
+
+    //The runtime folder of the user if there is one, since only they can get in there, and otherwise a folder of their own
+    // in the temporary folder, 'startuphelper-[user]'. Anyone can make that folder, so if it isn't owned by this user and
+    // private, a new folder with a random name is made instead
+    protected static String getDefaultLocation() {
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDirectory != null && runtimeDirectory.length() > 0) return Paths.get(runtimeDirectory, DEFAULT_FILENAME).toString();
+        Path temporaryDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+        String user = System.getProperty("user.name");
+        Path directory = temporaryDirectory.resolve("startuphelper-" + user);
+        FileAttribute<Set<PosixFilePermission>> privateDirectory = PosixFilePermissions.asFileAttribute(PRIVATE_DIRECTORY);
+        try {
+            try {
+                Files.createDirectory(directory, privateDirectory);
+            } catch (FileAlreadyExistsException faee) {
+                if (!isPrivateDirectory(directory)) {
+                    directory = Files.createTempDirectory(temporaryDirectory, "startuphelper-" + user + "-", privateDirectory);
+                    Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: '"+temporaryDirectory.resolve("startuphelper-" + user)+"' isn't a private folder of "
+                            +user+", using '"+directory+"' for the control socket instead.");
+                }
+            }
+            return directory.resolve(DEFAULT_FILENAME).toString();
+        } catch (UnsupportedOperationException uoe) {
+            //No owners and permissions like this on this system (Windows), so a folder wouldn't make it any more private
+            Util.debugPrint(Util.DEBUG_DETAILED, "Can't make a private folder for the control socket on this system ("+uoe+")");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't make a private folder for the control socket ("+ioe+")");
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while making a private folder for the control socket: "+se);
+        }
+        return temporaryDirectory.resolve(user + "-" + DEFAULT_FILENAME).toString();
+    }
+
+    //Returns whether 'directory' is a real folder (not a link to one), owned by this user and closed to everyone else
+    private static boolean isPrivateDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) return false;
+        UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        return Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).equals(user)
+                && Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS).equals(PRIVATE_DIRECTORY);
+    }
+
+    //Starts listening on a thread of its own. If the socket can't be made, StartupHelper just can't be controlled from outside
+    protected void start() {
+        try {
+            if (Files.exists(socketPath)) {
+                //A socket file is left behind if StartupHelper was killed, but it might also belong to one that's still running
+                if (isInUse()) {
+                    Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Another StartupHelper is already listening on '"+socketPath+"', not listening for commands.");
+                    return;
+                }
+                Files.delete(socketPath);
+            }
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            bind();
+            serverChannel.configureBlocking(false);
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't listen for commands on '"+socketPath+"' ("+ioe+")");
+            close();
+            return;
+        } catch (UnsupportedOperationException uoe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: This system doesn't support Unix domain sockets, so there's no control socket ("+uoe+")");
+            close();
+            return;
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while making the control socket '"+socketPath+"': "+se);
+            close();
+            return;
+        }
+        Util.debugPrint(Util.DEBUG_BASIC, "Listening for commands on '"+socketPath+"'");
+        Thread thread = new Thread(this, "Control socket");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //Stops listening, closes all connections and removes the socket file
+    protected void stop() {
+        isStopped = true;
+        if (selector != null) selector.wakeup();
+    }
+
+    //Only the user StartupHelper runs as should be able to control it. A socket gets its permissions from the umask when it's
+    // made, so it's made in a new folder only this user can get into, made owner-only there, and only then moved to 'socketPath'
+    private void bind() throws IOException {
+        Path privateDirectory;
+        try {
+            privateDirectory = Files.createTempDirectory(socketPath.getParent(), ".startuphelper-", PosixFilePermissions.asFileAttribute(PRIVATE_DIRECTORY));
+        } catch (UnsupportedOperationException uoe) {
+            //No permissions like this on this system (Windows), so there's nothing to set either
+            Util.debugPrint(Util.DEBUG_DETAILED, "Can't set the permissions of the control socket on this system ("+uoe+")");
+            serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            return;
+        }
+        Path privatePath = privateDirectory.resolve(DEFAULT_FILENAME);
+        try {
+            serverChannel.bind(UnixDomainSocketAddress.of(privatePath));
+            Files.setPosixFilePermissions(privatePath, PRIVATE_SOCKET);
+            Files.move(privatePath, socketPath, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            //Only a socket that couldn't be moved is still in there
+            Files.deleteIfExists(privatePath);
+            Files.delete(privateDirectory);
+        }
+    }
+
+    private boolean isInUse() {
+        try {
+            SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+            channel.close();
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isStopped) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException ioe) {
+                        //A client that went away doesn't matter to the others
+                        Util.debugPrint(Util.DEBUG_DETAILED, "Control socket connection closed ("+ioe+")");
+                        closeClient(key);
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR in the control socket, not listening for commands anymore: "+ioe);
+        } finally {
+            close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Client());
+    }
+
+    //Reads what the client sent, and answers every complete line
+    private void read(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        if (((SocketChannel) key.channel()).read(client.input) == -1) {
+            closeClient(key);
+            return;
+        }
+        client.input.flip();
+        int lineStart = client.input.position();
+        for (int i = lineStart; i < client.input.limit(); i++) {
+            if (client.input.get(i) != '\n') continue;
+            String line = new String(client.input.array(), lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+            if (line.length() > 0) client.addOutput(handle(line) + "\n");
+            lineStart = i + 1;
+        }
+        client.input.position(lineStart);
+        client.input.compact();
+        //Nobody needs lines this long, so it's not someone speaking this protocol
+        if (!client.input.hasRemaining()) {
+            client.addOutput("ERROR Line too long\n");
+            client.isClosing = true;
+        }
+        write(key);
+    }
+    //Sends as much of the answers as the socket takes. The rest is sent once the selector says there's room
+    private void write(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        ((SocketChannel) key.channel()).write(client.output);
+        if (client.output.hasRemaining()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        else if (client.isClosing) closeClient(key);
+        else key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void closeClient(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "Couldn't close a control socket connection ("+ioe+")");
+        }
+    }
+
+    private void close() {
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) key.channel().close();
+                selector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+                Files.deleteIfExists(socketPath);
+            }
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while closing the control socket: "+ioe);
+        }
+    }
+
+    //Carries out one command, and returns the answer
+    private String handle(String line) {
+        Util.debugPrint(Util.DEBUG_DETAILED, "Control socket command: "+line);
+        String command = line, argument = "";
+        if (line.contains(" ")) {
+            command = line.substring(0, line.indexOf(" "));
+            argument = line.substring(line.indexOf(" ") + 1).trim();
+        }
+        command = command.toLowerCase();
+
+        if (command.equals("status")) {
+            LaunchState state = engine.getState();
+            String status = "OK state=" + (state.isFinished() ? "finished" : engine.isPaused() ? "paused" : "counting");
+            status += " remaining=" + engine.getRemainingCount();
+            status += " waitleft=" + state.getTimeLeft(System.currentTimeMillis());
+            if (state.getHoldReason() != null) status += " held=" + state.getHoldReason();
+            //The location goes last, since it can contain spaces
+            if (state.getNextEntry() != null) status += " next=" + state.getNextEntry();
+            return status;
+        }
+        else if (command.equals("queue")) {
+            List<LaunchEntry> entries = engine.getUpcomingEntries();
+            StringBuilder queue = new StringBuilder("OK " + entries.size());
+            for (int i = 0; i < entries.size(); i++) queue.append("\n").append(i + 1).append(" ").append(entries.get(i));
+            return queue.toString();
+        }
+        else if (command.equals("pause") || command.equals("resume")) {
+            engine.setPaused(command.equals("pause"));
+            return "OK";
+        }
+        else if (command.equals("skip") || command.equals("start-now")) {
+            engine.skipWaitingForNextProgram(command.equals("start-now"));
+            return "OK";
+        }
+        else if (command.equals("launch-entry")) {
+            LaunchEntry entry = findEntry(argument);
+            if (entry == null) return "ERROR There's no program '"+argument+"' waiting to be started";
+            engine.launchNow(entry);
+            return "OK " + entry;
+        }
+        return "ERROR Unknown command '"+command+"', use status, queue, pause, resume, skip, start-now or launch-entry";
+    }
+
+    //Finds a program that hasn't been started yet, by its number in 'queue' or by its location
+    private LaunchEntry findEntry(String argument) {
+        List<LaunchEntry> entries = engine.getUpcomingEntries();
+        try {
+            int number = Integer.parseInt(argument);
+            return number >= 1 && number <= entries.size() ? entries.get(number - 1) : null;
+        } catch (NumberFormatException nfe) {
+            for (LaunchEntry entry : entries) {
+                if (entry.getProgram().equals(argument)) return entry;
+            }
+        }
+        return null;
+    }
+
+
+    //What's been read from a connection but isn't a whole line yet, and the answers that haven't been sent yet
+    private static class Client {
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        private ByteBuffer output = ByteBuffer.allocate(0);
+        //Close the connection once everything is sent
+        private boolean isClosing = false;
+
+        private void addOutput(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer newOutput = ByteBuffer.allocate(output.remaining() + bytes.length);
+            newOutput.put(output).put(bytes).flip();
+            output = newOutput;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package startuphelper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Keeps a log of everything that happens during a run: programs started or skipped, pauses, restarts and errors
+//Adding to it never blocks before it's closed. A background thread writes the new lines every FLUSH_INTERVAL (and right away for errors),
+// so if StartupHelper is killed halfway through, everything up to then is in the file. Errors and the end of the run
+// are also forced onto the disk, so they survive the power button too
+//Every run is appended to the same file, starting with a 'Run started' line. Once the file is larger than MAX_SIZE,
+// it's moved to '[file].1' (and the older ones to '.2' and so on), keeping the last MAX_OLD_FILES of them
+public class EventLog implements Runnable {
+    protected static final String DEFAULT_FILENAME = "StartupHelper.log";
+    private static final long FLUSH_INTERVAL = 250;
+    private static final long MAX_SIZE = 1024 * 1024;
+    private static final int MAX_OLD_FILES = 5;
+    protected static final String INFO = "INFO", ERROR = "ERROR";
+
+    private final File logFile;
+    private final ConcurrentLinkedQueue<String> pendingLines = new ConcurrentLinkedQueue<String>();
+    //The errors of this run, for showing them at the end
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final Object flushLock = new Object();
+    private final Thread writerThread;
+    private volatile boolean isClosed = false;
+    private boolean flushRequested = false;
+    //Whether the next write should wait until everything is on the disk
+    private volatile boolean syncRequested = false;
+    private BufferedWriter writer;
+    private FileOutputStream fileStream;
+
+    public EventLog(String filename) {
+        logFile = new File(filename);
+        add(INFO, "Run started, StartupHelper "+Util.VERSION);
+        writerThread = new Thread(this, "Event log writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    protected void info(String message) {
+        add(INFO, message);
+    }
+    protected void error(String message) {
+        errors.add(message);
+        add(ERROR, message);
+        //Errors are the most important thing to keep, so write them right away
+        syncRequested = true;
+        synchronized (flushLock) {
+            flushRequested = true;
+            flushLock.notifyAll();
+        }
+    }
+    private void add(String level, String message) {
+        String time;
+        //SimpleDateFormat isn't thread-safe
+        synchronized (timeFormat) {
+            time = timeFormat.format(new Date());
+        }
+        pendingLines.add(time + " " + level + " " + message);
+        //The writer thread is stopping or already gone, so write it here, or it would be lost
+        if (isClosed) writeLateLines();
+    }
+
+    //Returns a copy of this run's errors, in the order they happened
+    protected List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<String>(errors);
+        }
+    }
+    protected boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+    protected File getFile() {
+        return logFile;
+    }
+
+    //Writes what's left and stops the writer thread
+    protected void close() {
+        if (isClosed) return;
+        add(INFO, "Run finished");
+        isClosed = true;
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException ie) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Interrupted while closing the event log ("+ie+")");
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean closing = isClosed;
+            boolean sync = closing || syncRequested;
+            syncRequested = false;
+            writePendingLines(sync);
+            if (closing) break;
+            synchronized (flushLock) {
+                if (!flushRequested && !isClosed) {
+                    try {
+                        flushLock.wait(FLUSH_INTERVAL);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                }
+                flushRequested = false;
+            }
+        }
+        closeFile();
+    }
+
+    //Syncing on every write would keep the disk busy while programs are starting, so only errors and the end of the run are synced
+    private synchronized void writePendingLines(boolean sync) {
+        if (pendingLines.isEmpty() && (!sync || writer == null)) return;
+        try {
+            if (writer == null) openFile();
+            String line;
+            while ((line = pendingLines.poll()) != null) {
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+            //Make sure it's on the disk, since a boot that goes wrong might end with the power button
+            if (sync) fileStream.getFD().sync();
+            if (logFile.length() > MAX_SIZE) {
+                closeFile();
+                rotate();
+            }
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while writing the event log: "+ioe);
+            closeFile();
+        }
+    }
+
+    //For lines added after 'close', like errors from programs that were still being started
+    private synchronized void writeLateLines() {
+        writePendingLines(true);
+        closeFile();
+    }
+
+    private void openFile() throws IOException {
+        fileStream = new FileOutputStream(logFile, true);
+        writer = new BufferedWriter(new OutputStreamWriter(fileStream, "UTF-8"));
+    }
+    private synchronized void closeFile() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while closing the event log: "+ioe);
+        }
+        writer = null;
+        fileStream = null;
+    }
+
+    //Moves 'log' to 'log.1', 'log.1' to 'log.2' and so on, dropping the oldest one
+    private void rotate() {
+        new File(logFile.getPath() + "." + MAX_OLD_FILES).delete();
+        for (int i = MAX_OLD_FILES - 1; i >= 1; i--) {
+            File oldFile = new File(logFile.getPath() + "." + i);
+            if (oldFile.exists()) oldFile.renameTo(new File(logFile.getPath() + "." + (i + 1)));
+        }
+        if (!logFile.renameTo(new File(logFile.getPath() + ".1"))) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't rotate the event log '"+logFile+"'");
+        }
+    }
+}
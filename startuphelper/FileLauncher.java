@@ -2,19 +2,23 @@ package startuphelper;
 
 import java.awt.Desktop;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 //BIG thanks to: http://stackoverflow.com/questions/325299/cross-platform-way-to-open-a-file-using-java-1-5
 //The 'Desktop' class was acting up, and this made things a lot more stable, if less elegant
 
+//Executables are started directly, with the file as the only argument, so paths with spaces work and no helper process is needed
+//Only documents go through the platform's 'open' command (or the Desktop class), since those need a program picked for them
 public class FileLauncher {
     // Created the appropriate instance
-    public static FileLauncher getInstance(){
+    //If 'useDesktop' is false, the AWT Desktop class is never touched, so headless mode doesn't have to load AWT
+    public static FileLauncher getInstance(boolean useDesktop){
         String os = System.getProperty("os.name").toLowerCase();
 
         //First check if the Desktop class, which handles opening files platform-independently is supported
         // If it is, use that
-        if (Desktop.isDesktopSupported()) {
+        if (useDesktop && Desktop.isDesktopSupported()) {
           if (Desktop.getDesktop().isSupported(Desktop.Action.OPEN)) {
             return new GenericFileLauncher();
           }
@@ -38,51 +42,132 @@ public class FileLauncher {
         return fl;
     }
 
-    // default implementation :( 
-    public void open(String filename) throws IOException {
-        Runtime.getRuntime().exec(getCommand(filename));
+    private static final boolean IS_WINDOWS = System.getProperty("os.name").toLowerCase().indexOf("windows") != -1;
+    private static final boolean IS_LINUX = System.getProperty("os.name").toLowerCase().indexOf("linux") != -1;
+
+    //Starts the file, and returns the process that was started. Its ProcessHandle is available through 'toHandle()'
+    //For documents that's the platform's 'open' command, not the program that ends up showing the document
+    //Returns null if there's no process to return, when the Desktop class opened the file
+    public Process open(String filename) throws IOException {
+        return open(filename, ProcessOutput.DISCARD);
+    }
+    //Like 'open', with 'output' deciding where the output of the started process goes
+    //The Desktop class doesn't allow that, so files it opens ignore 'output'
+    public Process open(String filename, ProcessOutput output) throws IOException {
+        return open(filename, output, null);
+    }
+    //Like 'open', and if 'resourceClass' isn't null, the process is limited to what that class allows (only on Linux)
+    //A document's program gets the same limits, since it's started by the 'open' command, but not if the Desktop class opened it
+    public Process open(String filename, ProcessOutput output, ResourceClass resourceClass) throws IOException {
+        if (isExecutable(new File(filename))) {
+            try {
+                return startProcess(new String[] {filename}, output, resourceClass);
+            }
+            //If it can't be started by itself after all (like an 'Exec format error'), it's probably a document, so let the platform open it
+            catch (IOException ioe) {
+                Util.debugPrint(Util.DEBUG_BASIC, "'"+filename+"' couldn't be started as a program ("+ioe.getMessage()+"), opening it as a document.");
+            }
+        }
+        return openDocument(filename, output, resourceClass);
+    }
+
+    // default implementation :(
+    protected Process openDocument(String filename, ProcessOutput output, ResourceClass resourceClass) throws IOException {
+        return startProcess(getCommand(filename), output, resourceClass);
     }
-    
-    public String getCommand(String filename) {
+
+    //The command that opens a document, one argument per array item, so nothing has to be quoted
+    public String[] getCommand(String filename) {
         throw new UnsupportedOperationException();
     }
+
+    protected Process startProcess(String[] command, ProcessOutput output, ResourceClass resourceClass) throws IOException {
+        if (resourceClass != null) {
+            if (IS_LINUX) command = resourceClass.wrapCommand(command);
+            else Util.debugPrint(Util.DEBUG_BASIC, "Resource classes only work on Linux, starting '"+command[0]+"' normally.");
+        }
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        //Never leave the output in a pipe nobody reads, since a full pipe blocks the program
+        output.configure(processBuilder);
+        return processBuilder.start();
+    }
+
+    //Returns whether the file is a program that can be started by itself, instead of a document that needs a program to open it
+    protected static boolean isExecutable(File file) {
+        if (!file.isFile()) return false;
+        if (IS_WINDOWS) {
+            String name = file.getName().toLowerCase();
+            return name.endsWith(".exe") || name.endsWith(".com");
+        }
+        if (!file.canExecute()) return false;
+        //Some filesystems (like FAT, NTFS and network shares) mark every file as executable, so on Linux also look at how the file starts
+        if (IS_LINUX) return hasExecutableHeader(file);
+        return true;
+    }
+
+    //Returns whether the file starts like something Linux can run: an ELF binary, or a script with a '#!' line
+    private static boolean hasExecutableHeader(File file) {
+        byte[] header = new byte[4];
+        int length = 0;
+        try {
+            FileInputStream input = new FileInputStream(file);
+            try {
+                int read;
+                while (length < header.length && (read = input.read(header, length, header.length - length)) != -1) length += read;
+            } finally {
+                input.close();
+            }
+        }
+        //If it can't be read, it can't be checked either, so leave it to 'canExecute' and the fallback in 'open'
+        catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "ERROR while reading the start of '"+file.getPath()+"': "+ioe.getMessage());
+            return true;
+        }
+        catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "Security ERROR while reading the start of '"+file.getPath()+"': "+se.getMessage());
+            return true;
+        }
+        if (length >= 2 && header[0] == '#' && header[1] == '!') return true;
+        return length == 4 && header[0] == 0x7f && header[1] == 'E' && header[2] == 'L' && header[3] == 'F';
+    }
 }
 
 
 //If the Desktop class is supported, which is ostensibly meant for this sort of thing, use that
 class GenericFileLauncher extends FileLauncher {
   @Override
-  public void open(String filename) throws IOException {
+  protected Process openDocument(String filename, ProcessOutput output, ResourceClass resourceClass) throws IOException {
     Desktop.getDesktop().open(new File(filename));
+    return null;
   }
 }
 
 // One subclass per platform below:
-// Each one knows how to handle its own platform   
+// Each one knows how to handle its own platform
 
 class LinuxFileLauncher extends FileLauncher {
     @Override
-    public String getCommand(String filename) {
-        return "xdg-open "+filename;
+    public String[] getCommand(String filename) {
+        return new String[] {"xdg-open", filename};
     }
 }
 class OSXFileLauncher extends FileLauncher {
     @Override
-    public String getCommand(String filename) {
-        return "open "+filename;
+    public String[] getCommand(String filename) {
+        return new String[] {"open", filename};
     }
 }
 class WindowsFileLauncher extends FileLauncher {
     @Override
-    public String getCommand(String filename) {
-        //First part between quotes is the title of the command window, otherwise 'start' thinks filename is title
-        return "cmd /c start \"StartupHelper Helper\" \""+filename+"\"";
+    public String[] getCommand(String filename) {
+        //First argument after 'start' is the title of the command window, otherwise 'start' thinks filename is title
+        return new String[] {"cmd", "/c", "start", "StartupHelper Helper", filename};
     }
 }
 class Windows9xFileLauncher extends FileLauncher {
     @Override
-    public String getCommand(String filename) {
-        //First part between quotes is the title of the command window, otherwise 'start' thinks filename is title
-        return "command.com /C start \"StartupHelper Helper\" \""+filename+"\"";
+    public String[] getCommand(String filename) {
+        //First argument after 'start' is the title of the command window, otherwise 'start' thinks filename is title
+        return new String[] {"command.com", "/C", "start", "StartupHelper Helper", filename};
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package startuphelper;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+//Records a Java Flight Recorder recording of the whole run, with '-jfr:[file]' on the command line
+//It uses the JVM's 'default' settings plus the StartupHelper events below, and is written to '[file]' when the run is finished,
+// to open it in JDK Mission Control or with 'jfr print'
+//The events are also in any other recording, like one started with 'jcmd [pid] JFR.start'
+public class FlightRecording {
+    protected static final String CATEGORY = "StartupHelper";
+
+    private final String filename;
+    //Null if the recording couldn't be started
+    private Recording recording;
+
+    //Starts recording right away, so StartupHelper's own startup is in it too
+    public FlightRecording(String filename) {
+        this.filename = filename;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("StartupHelper");
+            recording.start();
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't read the flight recorder settings, not recording ("+ioe+")");
+        } catch (ParseException pe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't read the flight recorder settings, not recording ("+pe+")");
+        } catch (IllegalStateException ise) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: The flight recorder isn't available, not recording ("+ise+")");
+            recording = null;
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while starting the flight recorder: "+se);
+            recording = null;
+        }
+    }
+
+    //Stops recording and writes the recording to the file
+    protected void write() {
+        if (recording == null) return;
+        try {
+            recording.stop();
+            recording.dump(Paths.get(filename));
+            Util.debugPrint(Util.DEBUG_BASIC, "Flight recording written to '"+filename+"'");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while writing the flight recording to '"+filename+"': "+ioe);
+        } catch (IllegalStateException ise) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: The flight recording was already stopped ("+ise+")");
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+
+
+    //The events below cost nothing when nothing is recording: 'shouldCommit' is false then, and creating, beginning and ending
+    // an event is optimized away, so only fill in the fields once it's true
+    //None of them need a stack trace, they always come from the same place
+
+    @Name("startuphelper.ProgramlistLoad")
+    @Label("Program List Load")
+    @Description("Reading and parsing the program list, or using the cached plan")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ProgramlistLoadEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("From Cache")
+        boolean cached;
+        @Label("Programs")
+        int programCount;
+        @Label("Problems")
+        int problemCount;
+    }
+
+    @Name("startuphelper.Countdown")
+    @Label("Countdown")
+    @Description("Waiting for the next program to be started, from the moment it's the next one")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class CountdownEvent extends Event {
+        @Label("Program")
+        String program;
+        @Label("Outcome")
+        @Description("started, skipped, or replaced if another program became the next one first")
+        String outcome;
+    }
+
+    @Name("startuphelper.Ask")
+    @Label("Ask To Start")
+    @Description("Asking whether a program marked with '?' should be started")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class AskEvent extends Event {
+        @Label("Program")
+        String program;
+        @Label("Answer")
+        boolean answer;
+    }
+
+    @Name("startuphelper.Launch")
+    @Label("Launch")
+    @Description("Starting a program, until the OS has started it or it failed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class LaunchEvent extends Event {
+        @Label("Path")
+        String path;
+        @Label("Process ID")
+        @Description("-1 if it failed, or if the system opened the file")
+        long pid;
+        @Label("Spawn Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long spawnDuration;
+        @Label("Outcome")
+        @Description("started, not found, IO error, security error or error")
+        String outcome;
+    }
+
+    @Name("startuphelper.Control")
+    @Label("Control")
+    @Description("Pausing, resuming, skipping or starting a program early, from the window or the control socket, or reloading the list")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ControlEvent extends Event {
+        @Label("Action")
+        String action;
+        @Label("Program")
+        String program;
+
+        //Records an action that happened just now
+        protected static void record(String action, String program) {
+            ControlEvent event = new ControlEvent();
+            if (!event.shouldCommit()) return;
+            event.action = action;
+            event.program = program;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package startuphelper;
+
+//Swing helpers for the StartupHelper window and the Editor
+//Kept apart from Util, so headless mode never has to load any AWT or Swing classes
+
+import java.awt.Dimension;
+import java.awt.event.ActionListener;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeListener;
+
+public abstract class GuiUtil {
+    protected static JButton createButton(String label, JPanel parent, ActionListener actionListener, boolean setEnabled) {
+        JButton button = new JButton(label);
+        //button.setFocusPainted(false);
+        parent.add(button);
+        button.addActionListener(actionListener);
+        button.setEnabled(setEnabled);
+        
+        return button;
+    }
+    protected static JButton createButton(String label, JPanel parent, ActionListener actionListener) {
+        return createButton(label, parent, actionListener, true);
+    }
+    
+    protected static JSpinner createSpinner(String labelString, JPanel parent, int value, int min, int max, int stepsize) {
+        JSpinner spinner = new JSpinner(new SpinnerNumberModel(value, min, max, stepsize));
+        spinner.setMaximumSize(new Dimension(100, spinner.getMaximumSize().height));
+        
+        //Create a label to go along with the spinner, explaining what it does
+        JLabel label = new JLabel(labelString);
+        label.setLabelFor(spinner);
+        
+        parent.add(label);
+        parent.add(spinner);
+        
+        return spinner;
+    }
+    protected static JSpinner createSpinner(String labelString, JPanel parent,ChangeListener changeListener,
+                                                                              int value, int min, int max, int stepsize) {
+        JSpinner spinner = createSpinner(labelString, parent, value, min, max, stepsize);
+        spinner.addChangeListener(changeListener);
+        return spinner;
+    }
+}
@@ -0,0 +1,165 @@
+package startuphelper;
+
+import java.io.Console;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+//Starts the programs from the program list without any window, for machines where there's nobody to look at one
+//Only uses the console (or a log file) and never touches AWT or Swing, so it starts faster and uses less memory
+//Use '-headless' on the command line, or run this class directly to not even load the StartupHelper window class:
+//  java -cp StartupHelper.jar startuphelper.HeadlessLauncher
+public class HeadlessLauncher implements LaunchListener {
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+    //What the next program was being held back for at the last state, so it's only printed when it changes
+    private String holdReason;
+
+    public static void main(String[] args) {
+        //Make sure nothing accidentally tries to open a window
+        System.setProperty("java.awt.headless", "true");
+        String programlistLocation = Util.DEFAULT_PROGRAMLIST_LOCATION;
+        StartupTrace trace = null;
+        boolean supervise = false;
+        //Where to listen for commands from scripts, or null if they aren't wanted
+        String controlSocketLocation = null;
+        FlightRecording flightRecording = null;
+
+        //Read through all the arguments to see if any of them are valid
+        for (String arg : args) {
+            //Often arguments start with a dash. If users do that here out of habit, ignore that
+            while (arg.startsWith("-")) arg = arg.substring(1);
+            //If there are any parameters too (like 'debug:basic'), retrieve those. Keep their case, since they can be file names
+            String parameter = "";
+            if (arg.contains(":")) parameter = arg.substring(arg.indexOf(":")+1);
+            String argLowerCase = arg.toLowerCase();
+
+            if (argLowerCase.startsWith("debug:")) {
+                parameter = parameter.toLowerCase();
+                if (parameter.equals("verbose") || parameter.equals("4")) Util.setDebugLevel(Util.DEBUG_VERBOSE);
+                else if (parameter.equals("detailed") || parameter.equals("3")) Util.setDebugLevel(Util.DEBUG_DETAILED);
+                else if (parameter.equals("basic") || parameter.equals("2")) Util.setDebugLevel(Util.DEBUG_BASIC);
+                else if (parameter.equals("test") || parameter.equals("1")) Util.setDebugLevel(Util.DEBUG_TEST);
+                else if (parameter.equals("none") || parameter.equals("0")) Util.setDebugLevel(Util.DEBUG_ALWAYS);
+            }
+            else if (argLowerCase.startsWith("file:")) {
+                programlistLocation = Util.stripQuotes(parameter);
+            }
+            //Stay around after the list is done, to restart programs marked 'restart=on-failure'
+            else if (argLowerCase.equals("supervise")) {
+                supervise = true;
+            }
+            //Take commands through a Unix domain socket
+            else if (argLowerCase.equals("control")) {
+                controlSocketLocation = ControlSocket.getDefaultLocation();
+            }
+            else if (argLowerCase.startsWith("control:")) {
+                controlSocketLocation = Util.stripQuotes(parameter);
+            }
+            //Record a timeline of the run, and write it to the given file
+            else if (argLowerCase.startsWith("trace:")) {
+                trace = new StartupTrace(Util.stripQuotes(parameter));
+            }
+            //Record a flight recording of the run, and write it to the given file
+            else if (argLowerCase.startsWith("jfr:")) {
+                flightRecording = new FlightRecording(Util.stripQuotes(parameter));
+            }
+            //Write everything to a log file instead of the console
+            else if (argLowerCase.startsWith("log:")) {
+                try {
+                    Util.setLogStream(new PrintStream(new FileOutputStream(Util.stripQuotes(parameter), true), true));
+                } catch (FileNotFoundException fnfe) {
+                    Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't write to log file '"+parameter+"', logging to the console instead ("+fnfe+")");
+                }
+            }
+        }
+
+        //There's no editor without a window, so without a program list there's nothing to do
+        if (!new File(programlistLocation).exists()) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Program list not found at '"+programlistLocation+"'. Run StartupHelper without '-headless' to create one.");
+            System.exit(1);
+        }
+
+        FileLauncher fileLauncher = null;
+        try {
+            fileLauncher = FileLauncher.getInstance(false);
+        } catch (UnsupportedOperationException uoe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: This OS is not supported. Please report your OS name and how to launch programs to the project");
+            System.exit(1);
+        }
+
+        HeadlessLauncher launcher = new HeadlessLauncher();
+        long loadStart = trace != null ? trace.now() : 0;
+        LaunchPlan plan = ProgramlistParser.loadOrEmpty(programlistLocation);
+        if (trace != null) trace.addSpan("Load program list", StartupTrace.CATEGORY_STARTUP, loadStart, trace.now(), "");
+        LaunchEngine engine = new LaunchEngine(plan, fileLauncher, launcher);
+        engine.setTrace(trace);
+        engine.setFlightRecording(flightRecording);
+        engine.setSupervising(supervise);
+        engine.watchProgramlist(programlistLocation);
+        if (controlSocketLocation != null) engine.listenForControl(controlSocketLocation);
+        if (plan.isAutoWait()) engine.setHistory(new RunHistory(programlistLocation + RunHistory.EXTENSION));
+        launcher.log("Startup Helper "+Util.VERSION+" started headless, using '"+programlistLocation+"'");
+        engine.run();
+        if (engine.isSupervising()) {
+            launcher.log("All programs started, supervising the ones marked 'restart=on-failure'");
+            engine.supervise();
+        }
+
+        //Report the errors, if there are any
+        engine.closeEventLog();
+        List<String> errors = engine.getErrorList();
+        if (errors.size() > 0) {
+            for (String error : errors) launcher.log("ERROR: "+error);
+            launcher.log("These errors are also in '"+engine.getEventLogFile().getAbsolutePath()+"'");
+            System.exit(1);
+        }
+        launcher.log("All programs started.");
+        System.exit(0);
+    }
+
+    //Returns whether '-headless' is one of the arguments
+    protected static boolean isHeadlessRequested(String[] args) {
+        for (String arg : args) {
+            while (arg.startsWith("-")) arg = arg.substring(1);
+            if (arg.equalsIgnoreCase("headless")) return true;
+        }
+        return false;
+    }
+
+    private void log(String message) {
+        Util.debugPrint(Util.DEBUG_ALWAYS, timeFormat.format(new Date())+" "+message);
+    }
+
+    //Ask on the console. If there's no console to ask on, the program isn't started, the same as answering 'no'
+    @Override
+    public boolean askToStart(LaunchEntry entry) {
+        Console console = System.console();
+        if (console == null) {
+            log("Not starting '"+entry.getProgram()+"', since there's nobody to ask.");
+            return false;
+        }
+        String answer = console.readLine("Do you want to start '%s'? [y/N] ", entry.getProgram());
+        return answer != null && answer.trim().toLowerCase().startsWith("y");
+    }
+    @Override
+    public void waitingFor(LaunchEntry entry, long timeLeft) {
+        if (timeLeft < 0) log("Next: '"+entry.getProgram()+"', once the programs before it are ready");
+        else log("Next: '"+entry.getProgram()+"' in "+(timeLeft / 1000)+" s");
+    }
+    @Override
+    public void entryLaunched(LaunchEntry entry, boolean started) {
+        if (started) log("Started '"+entry.getProgram()+"'");
+        else log("Skipped '"+entry.getProgram()+"'");
+    }
+    @Override
+    public void stateChanged(LaunchState state) {
+        //The console only shows what's started, and why the next program is held back, so there's nothing to redraw
+        String newHoldReason = state.getHoldReason();
+        if (newHoldReason != null && !newHoldReason.equals(holdReason)) log("Waiting for "+newHoldReason+" before starting '"+state.getNextEntry().getProgram()+"'");
+        holdReason = newHoldReason;
+    }
+}
@@ -0,0 +1,156 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Measures how long each started program keeps the computer busy, and adds that to the RunHistory
+//A program counts as busy until it (and the processes it started) used less than IDLE_CPU of one processor for IDLE_WINDOW
+//The CPU time comes from '/proc/[pid]/stat', so this only works on Linux. All programs are checked together, on one thread
+public class IdleWatcher {
+    //All times in ms
+    private static final long CHECK_INTERVAL = 250, IDLE_WINDOW = 1000, MAX_TIME = 120000;
+    private static final double IDLE_CPU = 0.05;
+    //What Measurement.sample returns instead of a time: the program is still busy, or it exited before it was seen idle
+    private static final long STILL_BUSY = -1, NO_SAMPLE = -2;
+    //'/proc' counts CPU time in clock ticks, which are 1/100th of a second on practically every Linux system
+    private static final int CLOCK_TICKS_PER_SECOND = 100;
+
+    private final RunHistory history;
+    private final List<Measurement> measurements = new LinkedList<Measurement>();
+    private ScheduledExecutorService checker;
+
+    public IdleWatcher(RunHistory history) {
+        this.history = history;
+    }
+
+    protected static boolean isSupported() {
+        return new File("/proc/self/stat").canRead();
+    }
+
+    //Starts measuring the entry's process. Called from the thread that started it
+    protected synchronized void watch(LaunchEntry entry) {
+        if (entry.getProcess() == null) return;
+        //For documents, the process is the command that opened it, which exits right away and says nothing about the document
+        if (!FileLauncher.isExecutable(new File(entry.getProgram()))) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "'"+entry.getProgram()+"' isn't a program, so AutoWait can't learn its wait.");
+            return;
+        }
+        measurements.add(new Measurement(entry.getProgram(), entry.getProcess().toHandle()));
+        if (checker == null) {
+            checker = Executors.newSingleThreadScheduledExecutor();
+            checker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    check();
+                }
+            }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void check() {
+        long currentTime = System.currentTimeMillis();
+        Iterator<Measurement> iterator = measurements.iterator();
+        while (iterator.hasNext()) {
+            Measurement measurement = iterator.next();
+            long busyTime = measurement.sample(currentTime);
+            if (busyTime == NO_SAMPLE) {
+                Util.debugPrint(Util.DEBUG_BASIC, "'"+measurement.program+"' exited before it was idle, not remembering its wait this time.");
+                iterator.remove();
+            }
+            else if (busyTime >= 0) {
+                Util.debugPrint(Util.DEBUG_BASIC, "'"+measurement.program+"' kept the computer busy for "+busyTime+" ms.");
+                history.addSample(measurement.program, (int) busyTime);
+                iterator.remove();
+            }
+        }
+        if (measurements.isEmpty()) notifyAll();
+    }
+
+    //Waits until every program has been measured, but no longer than 'maxWait' ms. Unfinished measurements are dropped
+    protected synchronized void finish(long maxWait) {
+        long endTime = System.currentTimeMillis() + maxWait;
+        while (!measurements.isEmpty() && System.currentTimeMillis() < endTime) {
+            try {
+                wait(Math.max(1, endTime - System.currentTimeMillis()));
+            } catch (InterruptedException ie) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "Interrupted while waiting for programs to become idle ("+ie+")");
+                break;
+            }
+        }
+        if (!measurements.isEmpty()) Util.debugPrint(Util.DEBUG_BASIC, measurements.size()+" programs weren't idle yet, not remembering them this time.");
+        measurements.clear();
+        if (checker != null) checker.shutdownNow();
+    }
+
+
+    private static class Measurement {
+        private final String program;
+        private final ProcessHandle process;
+        private final long startTime;
+        //The CPU ticks each process had at the last check, to only count what was used since then
+        private final Map<Long, Long> lastTicks = new HashMap<Long, Long>();
+        private long busyTicks = 0;
+        //Recent checks as {time, busyTicks}, covering at least IDLE_WINDOW
+        private final LinkedList<long[]> recentChecks = new LinkedList<long[]>();
+
+        private Measurement(String program, ProcessHandle process) {
+            this.program = program;
+            this.process = process;
+            startTime = System.currentTimeMillis();
+        }
+
+        //Returns how long the program was busy in ms once it's idle, STILL_BUSY while it's still busy, or NO_SAMPLE if it exited first
+        //A program that exits before it's idle either handed its work to a process that isn't its descendant anymore (like a program
+        // that forks and exits), or it failed, so the time until it exited says nothing about how long it keeps the computer busy
+        private long sample(long currentTime) {
+            if (currentTime - startTime >= MAX_TIME) return MAX_TIME;
+            if (!process.isAlive()) return NO_SAMPLE;
+
+            addTicks(process.pid());
+            Iterator<ProcessHandle> descendants = process.descendants().iterator();
+            while (descendants.hasNext()) addTicks(descendants.next().pid());
+            recentChecks.addLast(new long[] {currentTime, busyTicks});
+
+            //Forget checks that are older than needed to look back over the whole idle window
+            while (recentChecks.size() > 1 && recentChecks.get(1)[0] <= currentTime - IDLE_WINDOW) recentChecks.removeFirst();
+            long[] windowStart = recentChecks.getFirst();
+            if (currentTime - windowStart[0] < IDLE_WINDOW) return STILL_BUSY;
+            double usedTime = (double) (busyTicks - windowStart[1]) / CLOCK_TICKS_PER_SECOND * 1000;
+            if (usedTime > (currentTime - windowStart[0]) * IDLE_CPU) return STILL_BUSY;
+            return windowStart[0] - startTime;
+        }
+
+        private void addTicks(long pid) {
+            long ticks = readCpuTicks(pid);
+            if (ticks < 0) return;
+            Long previousTicks = lastTicks.put(pid, ticks);
+            busyTicks += ticks - (previousTicks != null ? previousTicks : 0);
+        }
+    }
+
+    //Returns the user plus system CPU time of the process in clock ticks, or -1 if it can't be read (for instance because it exited)
+    //'/proc/[pid]/stat' looks like '123 (name) S 1 ...', and the name can contain spaces, so the fields are counted from the last ')'
+    protected static long readCpuTicks(long pid) {
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get("/proc/" + pid + "/stat")));
+            String[] fields = stat.substring(stat.lastIndexOf(")") + 2).trim().split("\\s+");
+            //Field 3 (the state) is the first one after the name, 'utime' and 'stime' are fields 14 and 15
+            return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        } catch (IOException ioe) {
+            return -1;
+        } catch (RuntimeException re) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "ERROR reading the CPU time of process "+pid+": "+re);
+            return -1;
+        }
+    }
+}
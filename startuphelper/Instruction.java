@@ -0,0 +1,19 @@
+package startuphelper;
+
+import java.io.Serializable;
+
+//A single step from the program list, as produced by ProgramlistParser
+//Instructions are immutable, so a parsed plan can be cached and shared between threads
+public abstract class Instruction implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int lineNumber;
+
+    protected Instruction(int lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    //The line in the program list this instruction came from, starting at 1
+    protected int getLineNumber() {
+        return lineNumber;
+    }
+}
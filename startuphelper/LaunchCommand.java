@@ -0,0 +1,8 @@
+package startuphelper;
+
+//What the window can ask a running LaunchEngine to do. See LaunchEngine.post
+enum LaunchCommand {
+    PAUSE, RESUME,
+    //Skip the next program, or start it right away
+    SKIP, START_NOW
+}
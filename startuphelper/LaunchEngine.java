@@ -0,0 +1,650 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+//Runs a LaunchPlan: waits, starts programs and keeps track of errors, without any GUI
+//The Swing window (through ProgramLoopWorker) and the headless mode both drive one of these, through a LaunchListener
+public class LaunchEngine implements Runnable {
+    private final LaunchListener listener;
+    private final FileLauncher fileLauncher;
+    //Replaced when the program list is reloaded. Settings that are only used at the start of the run keep their first value
+    private volatile LaunchPlan plan;
+    private final LaunchScheduler scheduler;
+    private final int parallelism;
+    //Everything that happens during the run, errors included, written to the disk as it happens
+    private final EventLog eventLog;
+    //Counters and histograms of the run, readable over JMX
+    private final LaunchMetrics metrics;
+
+    //Pause, Skip and Start from the window. Posting one never waits for the engine, it applies them the next time it wakes up
+    private final ConcurrentLinkedQueue<LaunchCommand> commands = new ConcurrentLinkedQueue<LaunchCommand>();
+    //Entries to start right away, from 'launch-entry' on the control socket
+    private final ConcurrentLinkedQueue<LaunchEntry> entriesToLaunch = new ConcurrentLinkedQueue<LaunchEntry>();
+    //Whether the engine will be paused once it's applied the commands posted so far, so the window can show it right away
+    private volatile boolean isPauseRequested = false;
+    //Only used on the engine thread
+    private boolean isPaused = false;
+    private long pausedAt;
+    private volatile boolean isCancelled = false;
+    //Reloads the program list when it changes during the run. Null if it isn't watched
+    private ProgramlistWatcher programlistWatcher;
+    //Takes commands from scripts during the run. Null if that wasn't asked for
+    private ControlSocket controlSocket;
+    //A reloaded program list, waiting for the engine thread to merge it in
+    private final AtomicReference<LaunchPlan> reloadedPlan = new AtomicReference<LaunchPlan>();
+    //What the window draws, replaced every time the engine wakes up
+    private volatile LaunchState state = LaunchState.NOT_STARTED;
+    //The engine parks this thread until the next program has to be started, or until something wakes it up
+    private volatile Thread engineThread;
+    private final AtomicBoolean wakeUpRequested = new AtomicBoolean(false);
+    //Programs are started on these threads, so a slow start doesn't hold up the others
+    private ExecutorService launchPool;
+    //Checks the readiness probes of started programs
+    private ScheduledExecutorService probeExecutor;
+    //Used to make the wait between programs depend on how busy the system is
+    private LoadMonitor loadMonitor;
+    private final int adaptiveMinWait, adaptiveMaxWait;
+    private LaunchEntry waitingForEntry;
+    //The flight recorder event for the countdown to 'waitingForEntry'. Null once that's over
+    private FlightRecording.CountdownEvent countdownEvent;
+    //Records a timeline of the run, if requested. Null otherwise
+    private StartupTrace trace;
+    //Records a flight recording of the run, if requested. Null otherwise
+    private FlightRecording flightRecording;
+    //Restarts failed programs after the run, if requested. Null otherwise
+    private Supervisor supervisor;
+    //Where 'AutoWait' learns the waits from, and what measures them. Null if 'AutoWait' is off
+    private RunHistory history;
+    private IdleWatcher idleWatcher;
+    //Tells when the system is idle, for the entries marked 'idle'. Null until there are any (and on systems where it can't be told)
+    private SystemIdleMonitor systemIdleMonitor;
+    //Holds programs back while memory or IO is short. Null if the list doesn't ask for it, or if it can't be checked here
+    private PressureGate pressureGate;
+    //What the next program is being held back for and since when, or null and -1 if it isn't. Only used on the engine thread
+    private String holdReason;
+    private long heldSince = -1;
+    //Reads the next programs into the disk cache while waiting. Null if the list doesn't have a 'prefetch' line
+    private Prefetcher prefetcher;
+    //How long to keep measuring the last programs after everything is started, in ms
+    private static final long MAX_MEASURE_WAIT_AT_END = 30000;
+
+    public LaunchEngine(LaunchPlan plan, FileLauncher fileLauncher, LaunchListener listener) {
+        this.listener = listener;
+        this.fileLauncher = fileLauncher;
+        this.plan = plan;
+        //A parallelism of 0 means the list didn't set it, so allow one program per processor
+        if (plan.getParallelism() > 0) parallelism = plan.getParallelism();
+        else parallelism = Runtime.getRuntime().availableProcessors();
+        scheduler = new LaunchScheduler(plan.getInstructions(), plan.getStartWait(), plan.getBetweenWait(), parallelism);
+        adaptiveMinWait = plan.getAdaptiveMinWait();
+        adaptiveMaxWait = plan.getAdaptiveMaxWait();
+        eventLog = new EventLog(EventLog.DEFAULT_FILENAME);
+        metrics = new LaunchMetrics(this);
+        //Show any problems with the list along with the errors from starting programs
+        for (String diagnostic : plan.getDiagnostics()) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Program list: " + diagnostic);
+            addError(diagnostic);
+        }
+    }
+
+    //Watch the program list during the run, and merge in the lines that haven't been started yet whenever it's changed
+    protected void watchProgramlist(String programlistLocation) {
+        programlistWatcher = new ProgramlistWatcher(programlistLocation, this);
+    }
+    //Hands the engine thread a new version of the program list. Can be called from any thread
+    protected void reload(LaunchPlan newPlan) {
+        reloadedPlan.set(newPlan);
+        wakeUp();
+    }
+    //Take commands from the Unix domain socket at 'socketLocation' during the run. See ControlSocket
+    protected void listenForControl(String socketLocation) {
+        controlSocket = new ControlSocket(socketLocation, this);
+    }
+    protected void setTrace(StartupTrace trace) {
+        this.trace = trace;
+    }
+    //The recording is written at the end of the run
+    protected void setFlightRecording(FlightRecording flightRecording) {
+        this.flightRecording = flightRecording;
+    }
+    //The run history to use if the list has 'AutoWait'. Ignored otherwise
+    protected void setHistory(RunHistory history) {
+        if (plan.isAutoWait()) this.history = history;
+    }
+    //If 'supervise' is true, programs marked 'restart=on-failure' are watched, and 'supervise()' keeps restarting them
+    protected void setSupervising(boolean supervise) {
+        supervisor = supervise ? new Supervisor(this) : null;
+    }
+    //Returns whether there are programs to supervise after the run
+    protected boolean isSupervising() {
+        return supervisor != null && supervisor.hasPrograms();
+    }
+    //Restarts failed programs until there are none left to supervise, or until the engine is cancelled. Call after 'run'
+    protected void supervise() {
+        if (supervisor != null && !isCancelled) supervisor.run();
+    }
+
+    //Returns whether the engine is paused, or will be once it gets to the last Pause or Resume
+    protected boolean isPaused() {
+        return isPauseRequested;
+    }
+    protected void setPaused(boolean isPaused) {
+        isPauseRequested = isPaused;
+        post(isPaused ? LaunchCommand.PAUSE : LaunchCommand.RESUME);
+    }
+    //Start or skip the next program without waiting for it any longer. Works while paused too, and stays paused
+    protected void skipWaitingForNextProgram(boolean startProgram) {
+        post(startProgram ? LaunchCommand.START_NOW : LaunchCommand.SKIP);
+    }
+    //Start this entry right away, whatever it's waiting for. Can be called from any thread
+    protected void launchNow(LaunchEntry entry) {
+        entriesToLaunch.add(entry);
+        wakeUp();
+    }
+    //Hands a command to the engine thread. Can be called from any thread, and never blocks
+    protected void post(LaunchCommand command) {
+        commands.add(command);
+        wakeUp();
+    }
+    //Stop starting programs. Wakes the engine up, so it doesn't sleep until the next deadline first
+    protected void cancel() {
+        isCancelled = true;
+        if (supervisor != null) supervisor.stop();
+        wakeUp();
+    }
+    protected boolean isCancelled() {
+        return isCancelled;
+    }
+
+    //Where the engine is, as of the last time it woke up, for drawing progress
+    protected LaunchState getState() {
+        return state;
+    }
+    //The entries that haven't been started yet, in the order of the list
+    protected List<LaunchEntry> getUpcomingEntries() {
+        return scheduler.getUpcomingEntries(Integer.MAX_VALUE);
+    }
+    protected int getRemainingCount() {
+        return scheduler.getRemainingCount();
+    }
+    protected int getEntryCount() {
+        return scheduler.getEntryCount();
+    }
+
+    //The errors so far, read from the event log
+    protected List<String> getErrorList() {
+        return eventLog.getErrors();
+    }
+    //Programs can be started from several threads at once, which the event log can handle without waiting on each other
+    protected void addError(String error) {
+        eventLog.error(error);
+    }
+    protected void addEvent(String event) {
+        eventLog.info(event);
+    }
+    protected File getEventLogFile() {
+        return eventLog.getFile();
+    }
+    //Writes the rest of the event log. Call once nothing can happen anymore, so after 'supervise' too
+    protected void closeEventLog() {
+        eventLog.close();
+    }
+
+    //Make the engine check right away whether there's anything to do, instead of sleeping until the next program
+    //If the engine isn't sleeping yet, the flag makes it skip its next sleep
+    private void wakeUp() {
+        wakeUpRequested.set(true);
+        Thread thread = engineThread;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+    //Sleep until 'deadline', or until something wakes the engine up
+    private void sleepUntil(long deadline) {
+        while (!wakeUpRequested.get() && !isCancelled) {
+            if (deadline == Long.MAX_VALUE) LockSupport.park(this);
+            else {
+                if (deadline <= System.currentTimeMillis()) break;
+                LockSupport.parkUntil(this, deadline);
+            }
+            if (Thread.interrupted()) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "Engine sleep interrupted");
+                break;
+            }
+        }
+        wakeUpRequested.set(false);
+    }
+
+    //Apply the commands from the window, in the order they were posted
+    private void applyCommands() {
+        LaunchCommand command;
+        while ((command = commands.poll()) != null) {
+            switch (command) {
+                case PAUSE:
+                case RESUME:
+                    applyPause(command == LaunchCommand.PAUSE);
+                    break;
+                case SKIP:
+                case START_NOW:
+                    boolean startProgram = command == LaunchCommand.START_NOW;
+                    LaunchEntry nextEntry = scheduler.getNextEntry();
+                    if (nextEntry == null) break;
+                    addEvent((startProgram ? "Starting '" : "Skipping '")+nextEntry.getProgram()+"' without waiting any longer");
+                    FlightRecording.ControlEvent.record(startProgram ? "Start now" : "Skip", nextEntry.getProgram());
+                    scheduler.forceNextEntry(startProgram);
+                    if (trace != null) trace.addInstant(startProgram ? "Start now" : "Skip", StartupTrace.CATEGORY_CONTROL, "");
+                    break;
+            }
+        }
+        LaunchEntry entry;
+        while ((entry = entriesToLaunch.poll()) != null) {
+            //It might have been started in the meantime
+            if (!entry.isWaiting()) continue;
+            addEvent("Starting '"+entry.getProgram()+"' right away, as asked through the control socket");
+            FlightRecording.ControlEvent.record("Launch entry", entry.getProgram());
+            scheduler.forceEntry(entry, true);
+            if (trace != null) trace.addInstant("Launch entry", StartupTrace.CATEGORY_CONTROL, entry.getProgram());
+        }
+    }
+    //Merge in the reloaded program list, if there is one
+    private void applyReload() {
+        LaunchPlan newPlan = reloadedPlan.getAndSet(null);
+        if (newPlan == null) return;
+        int keptCount = scheduler.merge(newPlan.getInstructions(), newPlan.getBetweenWait());
+        //Only report the problems that weren't in the list before
+        for (String diagnostic : newPlan.getDiagnostics()) {
+            if (!plan.getDiagnostics().contains(diagnostic)) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "Program list: " + diagnostic);
+                addError(diagnostic);
+            }
+        }
+        plan = newPlan;
+        startIdleCheck();
+        addEvent("Reloaded the program list, "+scheduler.getEntryCount()+" programs of which "+keptCount+" were already in it");
+        FlightRecording.ControlEvent.record("Reload", null);
+        if (trace != null) trace.addInstant("Reload", StartupTrace.CATEGORY_CONTROL, keptCount+" kept");
+    }
+    private void applyPause(boolean pause) {
+        //Only act if the pause state is a change, to prevent weird behavior when pressing Pause then Quit, or vice versa
+        if (pause == isPaused) return;
+        long currentTime = System.currentTimeMillis();
+        if (pause) {
+            //Take note of the time at which the program was paused, so the pause time can be determined
+            pausedAt = currentTime;
+            metrics.paused(currentTime);
+            addEvent("Paused");
+            FlightRecording.ControlEvent.record("Pause", null);
+            //The pressure is checked again from the start after resuming
+            endHold();
+        }
+        else {
+            //Add the time the program was paused to the time the programs should be started
+            scheduler.shiftTimes(currentTime - pausedAt);
+            metrics.resumed(currentTime);
+            addEvent("Resumed after "+(currentTime - pausedAt)+" ms");
+            FlightRecording.ControlEvent.record("Resume", null);
+            if (trace != null) trace.addSpan("Paused", StartupTrace.CATEGORY_CONTROL, trace.fromMillis(pausedAt), trace.now(), "");
+        }
+        isPaused = pause;
+    }
+    //Start or skip the entry the Start or Skip button was pressed for, while paused
+    //The time until then doesn't count as paused, so the programs after it wait as long as they would have without the pause
+    private void launchForcedEntry() {
+        LaunchEntry entry = scheduler.pollForcedEntry();
+        if (entry == null) return;
+        long currentTime = System.currentTimeMillis();
+        scheduler.shiftTimes(currentTime - pausedAt);
+        pausedAt = currentTime;
+        launchEntry(entry);
+    }
+
+    //Keep checking whether the system is idle, if there are entries waiting for that and it isn't being checked yet
+    //The engine is woken up every time the system becomes idle, but it checks 'isIdle' itself, so it can reset it
+    private void startIdleCheck() {
+        if (systemIdleMonitor != null || !scheduler.hasIdleEntries()) return;
+        if (!SystemIdleMonitor.isSupported()) {
+            Util.debugPrint(Util.DEBUG_BASIC, "Can't tell whether the system is idle, so the 'idle' programs will be started at their deadline.");
+            return;
+        }
+        final SystemIdleMonitor monitor = new SystemIdleMonitor(plan.getIdleCpuLimit(), plan.getIdleDiskLimit(), plan.getIdleTime());
+        systemIdleMonitor = monitor;
+        probeExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                boolean wasIdle = monitor.isIdle();
+                if (monitor.sample() && !wasIdle) wakeUp();
+            }
+        }, 0, SystemIdleMonitor.SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    //Returns whether the ready programs have to wait, because the system is short on memory or busy with IO
+    //Once a program has been held back for the gate's timeout, it's let through anyway
+    private boolean isHeldByPressure(LaunchEntry entry) {
+        if (pressureGate == null || entry.isForced()) return false;
+        String reason = pressureGate.getHoldReason();
+        if (reason == null) {
+            if (holdReason != null) addEvent("Done waiting for "+holdReason+" after "+(System.currentTimeMillis() - heldSince)+" ms");
+            endHold();
+            return false;
+        }
+        long currentTime = System.currentTimeMillis();
+        if (heldSince == -1) {
+            heldSince = currentTime;
+            Util.debugPrint(Util.DEBUG_BASIC, "Waiting for "+reason+" before starting '"+entry.getProgram()+"'.");
+            addEvent("Waiting for "+reason+" before starting '"+entry.getProgram()+"'");
+        }
+        if (currentTime - heldSince >= pressureGate.getTimeout()) {
+            Util.debugPrint(Util.DEBUG_BASIC, "Still waiting for "+reason+", starting '"+entry.getProgram()+"' anyway.");
+            addEvent("Still waiting for "+reason+" after "+(currentTime - heldSince)+" ms, starting '"+entry.getProgram()+"' anyway");
+            endHold();
+            return false;
+        }
+        holdReason = reason;
+        return true;
+    }
+    private void endHold() {
+        holdReason = null;
+        heldSince = -1;
+    }
+
+    private void publishState() {
+        LaunchEntry nextEntry = scheduler.getNextEntry();
+        if (nextEntry == null) state = new LaunchState(isPaused, pausedAt, null, 0, -1, null, scheduler.isFinished());
+        else {
+            state = new LaunchState(isPaused, pausedAt, nextEntry, scheduler.getWaitingSince(nextEntry), scheduler.getExpectedReadyTime(nextEntry),
+                    holdReason, false);
+        }
+        listener.stateChanged(state);
+    }
+
+    //Determine how long to wait after a program. With 'AutoWait', that's what was learned on earlier runs, if there is anything yet
+    //Otherwise, if adaptive waiting is enabled and the load can be read, it's somewhere between the adaptive bounds,
+    // and otherwise it's the fixed 'betweenWait' (-1)
+    private int getAdaptiveWaitTime(LaunchEntry entry) {
+        if (history != null) {
+            int learnedWait = history.getLearnedWait(entry.getProgram());
+            if (learnedWait >= 0) {
+                Util.debugPrint(Util.DEBUG_BASIC, "Waiting the learned "+learnedWait+" ms after '"+entry.getProgram()+"'.");
+                return learnedWait;
+            }
+        }
+        if (loadMonitor != null) {
+            double load = loadMonitor.sampleLoad();
+            if (load >= 0) {
+                int waitTime = LoadMonitor.getAdaptiveWait(load, adaptiveMinWait, adaptiveMaxWait);
+                Util.debugPrint(Util.DEBUG_BASIC, "System load is "+Math.round(load*100)+"%, waiting "+waitTime+" ms after the last program.");
+                return waitTime;
+            }
+        }
+        return -1;
+    }
+
+    private void launchEntry(final LaunchEntry entry) {
+        boolean startProgram = true;
+        if (entry.isForced()) startProgram = entry.isForcedLaunch();
+        //Ask if the program should be started, if the list says so
+        if (startProgram && entry.isAsk()) {
+            long askStart = trace != null ? trace.now() : 0;
+            FlightRecording.AskEvent askEvent = new FlightRecording.AskEvent();
+            askEvent.begin();
+            startProgram = listener.askToStart(entry);
+            askEvent.end();
+            if (askEvent.shouldCommit()) {
+                askEvent.program = entry.getProgram();
+                askEvent.answer = startProgram;
+                askEvent.commit();
+            }
+            if (trace != null) trace.addSpan("Ask about "+entry.getProgram(), StartupTrace.CATEGORY_ASK, askStart, trace.now(), startProgram ? "yes" : "no");
+        }
+        if (trace != null) {
+            trace.addSpan("Wait for "+entry.getProgram(), StartupTrace.CATEGORY_WAIT, trace.fromMillis(scheduler.getWaitingSince(entry)), trace.now(),
+                    startProgram ? "started" : "skipped");
+        }
+        if (entry.isIdle() && !entry.isForced()) {
+            addEvent("'"+entry.getProgram()+"' waited for the system to become idle"+(scheduler.isSystemIdle() ? "" : ", until its deadline"));
+            //The next idle entry waits until this one has settled down
+            if (systemIdleMonitor != null) {
+                systemIdleMonitor.reset();
+                scheduler.setSystemIdle(false);
+            }
+        }
+        if (entry == waitingForEntry) endCountdown(startProgram ? "started" : "skipped");
+        long launchTime = System.currentTimeMillis();
+        metrics.entryLaunched(startProgram, launchTime - scheduler.getWaitingSince(entry));
+        scheduler.setLaunched(entry, startProgram, launchTime);
+        //LAUNCH PROGRAM (if we should)
+        if (startProgram) {
+            launchPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long spawnStart = System.nanoTime();
+                    boolean started = startProgram(entry);
+                    if (started && supervisor != null && entry.isRestartOnFailure()) supervisor.watch(entry);
+                    if (started && idleWatcher != null) idleWatcher.watch(entry);
+                    if (trace != null) {
+                        String detail = "failed";
+                        if (started) detail = entry.getProcess() != null ? "pid "+entry.getProcess().pid() : "ok";
+                        trace.addSpan("Start "+entry.getProgram(), StartupTrace.CATEGORY_LAUNCH, trace.fromNanoTime(spawnStart), trace.now(), detail);
+                    }
+                }
+            });
+            if (entry.getReadinessProbe() != null) watchReadiness(entry);
+            else entry.setAdaptiveWait(getAdaptiveWaitTime(entry));
+        }
+        else {
+            Util.debugPrint(Util.DEBUG_BASIC, "Skipping program '"+entry.getProgram()+"'.");
+            addEvent("Skipped '"+entry.getProgram()+"'");
+        }
+        listener.entryLaunched(entry, startProgram);
+    }
+
+    //Returns whether the program was started without errors. The started process and the time it took are stored in the entry
+    protected boolean startProgram(LaunchEntry entry) {
+        String programLocation = entry.getProgram();
+        Util.debugPrint(Util.DEBUG_BASIC, "Starting program '"+programLocation+"'.");
+        FlightRecording.LaunchEvent launchEvent = new FlightRecording.LaunchEvent();
+        launchEvent.begin();
+        try {
+            File programFile = new File(programLocation);
+            if (!programFile.exists()) throw new FileNotFoundException();
+            long spawnStart = System.nanoTime();
+            ResourceClass resourceClass = entry.getResourceClassName() != null ? plan.getResourceClass(entry.getResourceClassName()) : null;
+            Process process = fileLauncher.open(programLocation, entry.getOutput(), resourceClass);
+            entry.setProcess(process, System.nanoTime() - spawnStart);
+            metrics.programStarted(System.currentTimeMillis(), entry.getSpawnTime());
+            recordLaunch(launchEvent, programLocation, process, entry.getSpawnTime(), "started");
+            Util.debugPrint(Util.DEBUG_BASIC, "Started '"+programLocation+"'"+(process != null ? " as process "+process.pid() : "")
+                    +" in "+String.format("%.1f", entry.getSpawnTime() / 1000000.0)+" ms.");
+            addEvent("Started '"+programLocation+"'"+(process != null ? " as process "+process.pid() : "")
+                    +" in "+String.format("%.1f", entry.getSpawnTime() / 1000000.0)+" ms");
+            return true;
+        } catch (FileNotFoundException fnfe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR, file '"+programLocation+"' not found ("+fnfe+")");
+            addError("File '"+programLocation+"' was not found. Please check for spelling errors.");
+            metrics.programFailed(LaunchMetrics.FAILURE_NOT_FOUND);
+            recordLaunch(launchEvent, programLocation, null, 0, "not found");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while opening '"+programLocation+"': "+ioe);
+            addError("IO error while trying to start '"+programLocation+" ("+ioe+")");
+            metrics.programFailed(LaunchMetrics.FAILURE_IO);
+            recordLaunch(launchEvent, programLocation, null, 0, "IO error");
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while trying to open '"+programLocation+"': "+se);
+            addError("Read error while trying to start '"+programLocation+" ("+se+")");
+            metrics.programFailed(LaunchMetrics.FAILURE_SECURITY);
+            recordLaunch(launchEvent, programLocation, null, 0, "security error");
+        } catch (Exception e) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "UNKNOWN ERROR: "+e);
+            addError("Generic error while trying to start '"+programLocation+"': "+e);
+            metrics.programFailed(LaunchMetrics.FAILURE_OTHER);
+            recordLaunch(launchEvent, programLocation, null, 0, "error");
+        }
+        return false;
+    }
+    //'spawnTime' is in ns, or 0 if the program wasn't started
+    private static void recordLaunch(FlightRecording.LaunchEvent launchEvent, String programLocation, Process process, long spawnTime, String outcome) {
+        launchEvent.end();
+        if (!launchEvent.shouldCommit()) return;
+        launchEvent.path = programLocation;
+        launchEvent.pid = process != null ? process.pid() : -1;
+        launchEvent.spawnDuration = spawnTime;
+        launchEvent.outcome = outcome;
+        launchEvent.commit();
+    }
+
+    //Keep checking the entry's readiness probe until it's ready or it times out, then let the engine start what comes next
+    private void watchReadiness(final LaunchEntry entry) {
+        final long timeoutTime = System.currentTimeMillis() + entry.getReadinessTimeout();
+        Util.debugPrint(Util.DEBUG_DETAILED, "Waiting for "+entry.getReadinessProbe()+" before starting programs after '"+entry.getProgram()+"'.");
+        probeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean isReady = entry.getReadinessProbe().isReady();
+                if (isReady || System.currentTimeMillis() >= timeoutTime || isCancelled) {
+                    if (isReady) Util.debugPrint(Util.DEBUG_BASIC, "'"+entry.getProgram()+"' is ready ("+entry.getReadinessProbe()+").");
+                    else Util.debugPrint(Util.DEBUG_BASIC, "'"+entry.getProgram()+"' wasn't ready in time ("+entry.getReadinessProbe()+"), continuing anyway.");
+                    scheduler.setReady(entry, System.currentTimeMillis());
+                    if (trace != null) {
+                        trace.addSpan("Readiness of "+entry.getProgram(), StartupTrace.CATEGORY_READY, trace.fromMillis(entry.getLaunchTime()), trace.now(),
+                                isReady ? "ready" : "timed out");
+                    }
+                    wakeUp();
+                }
+                else probeExecutor.schedule(this, ReadinessProbe.CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    //Let the listener know when the engine starts waiting for a different entry
+    private void updateWaitingFor() {
+        LaunchEntry nextEntry = scheduler.getNextEntry();
+        if (nextEntry == null || nextEntry == waitingForEntry) return;
+        endCountdown("replaced");
+        waitingForEntry = nextEntry;
+        countdownEvent = new FlightRecording.CountdownEvent();
+        countdownEvent.begin();
+        long deadline = scheduler.getNextDeadline(System.currentTimeMillis());
+        //Waiting for a readiness probe has no deadline
+        if (deadline == Long.MAX_VALUE) listener.waitingFor(nextEntry, -1);
+        else listener.waitingFor(nextEntry, Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    //Ends the flight recorder event for the countdown to 'waitingForEntry', if it hasn't ended yet
+    private void endCountdown(String outcome) {
+        if (countdownEvent == null) return;
+        countdownEvent.end();
+        if (countdownEvent.shouldCommit()) {
+            countdownEvent.program = waitingForEntry.getProgram();
+            countdownEvent.outcome = outcome;
+            countdownEvent.commit();
+        }
+        countdownEvent = null;
+    }
+
+    @Override
+    public void run() {
+        engineThread = Thread.currentThread();
+        launchPool = Executors.newFixedThreadPool(parallelism);
+        probeExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        //The first wait until a program should be started is counted from here
+        scheduler.start(System.currentTimeMillis());
+        metrics.runStarted(System.currentTimeMillis());
+        metrics.register();
+        //Only bother with the system load if adaptive waiting is enabled and possible on this system
+        if (adaptiveMaxWait > 0) {
+            LoadMonitor monitor = new LoadMonitor();
+            if (monitor.isSupported()) {
+                loadMonitor = monitor;
+                //The load after the first program is measured from here
+                loadMonitor.sampleLoad();
+            }
+            else Util.debugPrint(Util.DEBUG_BASIC, "System load can't be read on this system, using the fixed BetweenWait instead.");
+        }
+        if (plan.getPressureGate() != null) {
+            if (plan.getPressureGate().isSupported()) pressureGate = plan.getPressureGate();
+            else Util.debugPrint(Util.DEBUG_BASIC, "Memory and IO pressure can't be read on this system, so programs aren't held back for it.");
+        }
+        if (plan.getPrefetchCount() > 0) prefetcher = new Prefetcher(plan.getPrefetchRate());
+        if (history != null) {
+            if (IdleWatcher.isSupported()) idleWatcher = new IdleWatcher(history);
+            else Util.debugPrint(Util.DEBUG_BASIC, "Program CPU use can't be read on this system, so AutoWait can't learn anything.");
+        }
+
+        startIdleCheck();
+
+        //Loop through the program list until there's no programs left
+        if (programlistWatcher != null) programlistWatcher.start();
+        if (controlSocket != null) controlSocket.start();
+        while (!scheduler.isFinished() && !isCancelled) {
+            applyReload();
+            applyCommands();
+            //Only do something if the engine isn't paused
+            if (!isPaused) {
+                if (systemIdleMonitor != null) scheduler.setSystemIdle(systemIdleMonitor.isIdle());
+                //Start every program that's ready to be started
+                LaunchEntry entry = scheduler.pollReadyEntry(System.currentTimeMillis());
+                while (entry != null && !isCancelled && !isHeldByPressure(entry)) {
+                    launchEntry(entry);
+                    entry = scheduler.pollReadyEntry(System.currentTimeMillis());
+                }
+                if (scheduler.isFinished()) break;
+                updateWaitingFor();
+                publishState();
+                //Use the wait to get the next programs off the disk
+                if (prefetcher != null) prefetcher.prefetch(scheduler.getUpcomingEntries(plan.getPrefetchCount()));
+                //Sleep until the next program can be started
+                long deadline = scheduler.getNextDeadline(System.currentTimeMillis());
+                //While a program is held back, keep checking whether it can go
+                if (holdReason != null) deadline = Math.min(deadline, System.currentTimeMillis() + PressureGate.CHECK_INTERVAL);
+                Util.debugPrint(Util.DEBUG_VERBOSE, "Current time: "+System.currentTimeMillis()+", next deadline: "+deadline);
+                sleepUntil(deadline);
+            }
+            //While paused, there's nothing to do until something wakes the engine up, except for the Start and Skip buttons
+            else {
+                launchForcedEntry();
+                if (scheduler.isFinished()) break;
+                publishState();
+                sleepUntil(Long.MAX_VALUE);
+            }
+        } //End queue-reader while-loop
+
+        publishState();
+        metrics.runFinished(System.currentTimeMillis());
+        endCountdown("cancelled");
+        engineThread = null;
+        if (programlistWatcher != null) programlistWatcher.stop();
+        if (controlSocket != null) controlSocket.stop();
+        //Probes and prefetching don't matter anymore once everything has been started
+        probeExecutor.shutdownNow();
+        if (prefetcher != null) prefetcher.stop();
+        //Let the programs that are still being started finish, so their errors get reported too
+        launchPool.shutdown();
+        try {
+            launchPool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Interrupted while waiting for programs to start ("+ie+")");
+        }
+        Util.debugPrint(Util.DEBUG_BASIC, "Reached end of program list.");
+        addEvent(isCancelled ? "Cancelled" : "Reached end of program list");
+        //Give the last programs a chance to become idle, so they're learned too
+        if (idleWatcher != null) {
+            if (!isCancelled) idleWatcher.finish(MAX_MEASURE_WAIT_AT_END);
+            else idleWatcher.finish(0);
+            history.save();
+        }
+        //The log sizes aren't checked anymore once StartupHelper exits, so give them one last check
+        LogRotator.checkSizes();
+        if (trace != null) trace.write();
+        if (flightRecording != null) flightRecording.write();
+    }
+}
@@ -0,0 +1,201 @@
+package startuphelper;
+
+import java.util.LinkedList;
+import java.util.List;
+
+//A single program from the program list, along with everything needed to decide when it can be started
+public class LaunchEntry {
+    protected static final int STATE_WAITING = 0, STATE_LAUNCHED = 1, STATE_SKIPPED = 2;
+
+    private final LaunchInstruction instruction;
+    private final String program;
+    private final boolean ask;
+    private final String name, group, after;
+    //The entries that have to be started (or skipped) before this one can be
+    private final List<LaunchEntry> dependencies = new LinkedList<LaunchEntry>();
+    //'Wait' lines directly above this entry, and the 'BetweenWait' that was in effect for it, in ms
+    private int extraWait, betweenWait;
+    //If there's a readiness probe, the entries after this one wait until it reports ready (or times out) instead
+    private ReadinessProbe readinessProbe;
+    private int readinessTimeout = ReadinessProbe.DEFAULT_TIMEOUT;
+    private long readyTime = -1;
+    //Where the output of the started program goes
+    private ProcessOutput output = ProcessOutput.DISCARD;
+    //Whether the supervisor should start the program again when it exits with an error
+    private final boolean restartOnFailure;
+    //The name of the resource class from the 'class=' attribute, or null if it doesn't have one
+    private final String resourceClassName;
+    //Files (or folders) the program will read when it starts, besides itself, from the 'prefetch=' attribute
+    private final List<String> prefetchFiles = new LinkedList<String>();
+    //For entries marked 'idle', the longest time to wait for the system to become idle in ms, and -1 for the others
+    //The entries below an 'idle' entry don't wait for it
+    private final int idleDeadline;
+
+    private int state = STATE_WAITING;
+    private long launchTime;
+    //If adaptive waiting is on, the wait after this entry is decided when it's started. -1 means it isn't
+    private int adaptiveWait = -1;
+    //Set by the Start and Skip buttons, to start or skip this entry without waiting any longer
+    private boolean forced = false, forcedLaunch = true;
+    //The started process, and how long it took to start it in ns. Set from the thread that started it
+    //The process is null if it couldn't be started, or if the Desktop class opened the file
+    private volatile Process process;
+    private volatile long spawnTime = -1;
+
+    protected LaunchEntry(LaunchInstruction instruction) {
+        this.instruction = instruction;
+        program = instruction.getProgram();
+        ask = instruction instanceof AskInstruction;
+        name = instruction.getAttribute("name");
+        group = instruction.getAttribute("group");
+        after = instruction.getAttribute("after");
+        if (instruction.getAttribute("ready") != null) {
+            readinessProbe = ReadinessProbe.getInstance(instruction.getAttribute("ready"));
+        }
+        if (instruction.getAttribute("timeout") != null) {
+            readinessTimeout = Integer.parseInt(instruction.getAttribute("timeout"));
+        }
+        restartOnFailure = "on-failure".equals(instruction.getAttribute("restart"));
+        resourceClassName = instruction.getAttribute("class");
+        idleDeadline = instruction.getAttribute("idle") != null ? Integer.parseInt(instruction.getAttribute("idle")) : -1;
+        if (instruction.getAttribute("prefetch") != null) {
+            for (String path : instruction.getAttribute("prefetch").split(",")) {
+                if (path.trim().length() > 0) prefetchFiles.add(path.trim());
+            }
+        }
+        if (instruction.getAttribute("output") != null) {
+            int maxLogSize = ProcessOutput.DEFAULT_LOG_SIZE;
+            if (instruction.getAttribute("logsize") != null) maxLogSize = Integer.parseInt(instruction.getAttribute("logsize"));
+            output = ProcessOutput.getInstance(instruction.getAttribute("output"), maxLogSize * 1024L);
+        }
+    }
+
+    protected LaunchInstruction getInstruction() {
+        return instruction;
+    }
+    protected String getProgram() {
+        return program;
+    }
+    protected boolean isAsk() {
+        return ask;
+    }
+    protected String getName() {
+        return name;
+    }
+    protected String getGroup() {
+        return group;
+    }
+    protected String getAfter() {
+        return after;
+    }
+    protected List<LaunchEntry> getDependencies() {
+        return dependencies;
+    }
+    protected int getExtraWait() {
+        return extraWait;
+    }
+    protected void setExtraWait(int extraWait) {
+        this.extraWait = extraWait;
+    }
+    protected int getBetweenWait() {
+        return betweenWait;
+    }
+    protected void setBetweenWait(int betweenWait) {
+        this.betweenWait = betweenWait;
+    }
+
+    protected ReadinessProbe getReadinessProbe() {
+        return readinessProbe;
+    }
+    protected int getReadinessTimeout() {
+        return readinessTimeout;
+    }
+    protected ProcessOutput getOutput() {
+        return output;
+    }
+    protected boolean isRestartOnFailure() {
+        return restartOnFailure;
+    }
+    protected String getResourceClassName() {
+        return resourceClassName;
+    }
+    protected List<String> getPrefetchFiles() {
+        return prefetchFiles;
+    }
+    protected boolean isIdle() {
+        return idleDeadline != -1;
+    }
+    protected int getIdleDeadline() {
+        return idleDeadline;
+    }
+
+    //Returns whether the entries after this one should wait for the probe rather than for 'BetweenWait'
+    protected boolean isProbed() {
+        return readinessProbe != null && state == STATE_LAUNCHED;
+    }
+    protected boolean isReady() {
+        return readyTime != -1;
+    }
+    protected long getReadyTime() {
+        return readyTime;
+    }
+    protected void setReadyTime(long readyTime) {
+        this.readyTime = readyTime;
+    }
+
+    protected int getState() {
+        return state;
+    }
+    protected boolean isWaiting() {
+        return state == STATE_WAITING;
+    }
+    protected long getLaunchTime() {
+        return launchTime;
+    }
+    protected void setLaunched(boolean launched, long time) {
+        state = launched ? STATE_LAUNCHED : STATE_SKIPPED;
+        launchTime = time;
+    }
+    protected void shiftLaunchTime(long timeToAdd) {
+        launchTime += timeToAdd;
+        if (readyTime != -1) readyTime += timeToAdd;
+    }
+    protected int getAdaptiveWait() {
+        return adaptiveWait;
+    }
+    protected void setAdaptiveWait(int adaptiveWait) {
+        this.adaptiveWait = adaptiveWait;
+    }
+    protected boolean isForced() {
+        return forced;
+    }
+    protected boolean isForcedLaunch() {
+        return forcedLaunch;
+    }
+    protected void setForced(boolean launch) {
+        forced = true;
+        forcedLaunch = launch;
+    }
+
+    protected Process getProcess() {
+        return process;
+    }
+    protected long getSpawnTime() {
+        return spawnTime;
+    }
+    protected void setProcess(Process process, long spawnTime) {
+        this.process = process;
+        this.spawnTime = spawnTime;
+    }
+
+    //Returns how long this entry should keep the programs after it waiting, in ms
+    protected int getWaitAfter(int betweenWait) {
+        if (adaptiveWait >= 0) return adaptiveWait;
+        return betweenWait;
+    }
+
+    @Override
+    public String toString() {
+        return (ask ? "?" : "") + program;
+    }
+}
@@ -0,0 +1,37 @@
+package startuphelper;
+
+import java.util.Collections;
+import java.util.Map;
+
+//Start a program
+class LaunchInstruction extends Instruction {
+    private static final long serialVersionUID = 1L;
+    private final String program;
+    //The attributes after the '|', like 'name' and 'after'. Keys are lower case
+    private final Map<String, String> attributes;
+
+    LaunchInstruction(int lineNumber, String program, Map<String, String> attributes) {
+        super(lineNumber);
+        this.program = program;
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    protected String getProgram() {
+        return program;
+    }
+    protected Map<String, String> getAttributes() {
+        return attributes;
+    }
+    protected String getAttribute(String key) {
+        return attributes.get(key);
+    }
+    //Returns whether the other instruction starts the same program in the same way, whichever line it's on
+    protected boolean isSameLaunch(LaunchInstruction other) {
+        return program.equals(other.program) && attributes.equals(other.attributes) && getClass() == other.getClass();
+    }
+
+    @Override
+    public String toString() {
+        return program;
+    }
+}
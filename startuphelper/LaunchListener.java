@@ -0,0 +1,15 @@
+package startuphelper;
+
+//Lets a front-end (the Swing window, or the console in headless mode) follow and steer a LaunchEngine run
+//All methods are called on the engine's thread
+public interface LaunchListener {
+    //Called for entries marked with '?'. Returns whether the program should be started
+    public boolean askToStart(LaunchEntry entry);
+    //Called when the engine starts waiting for a different entry than before, with the time left until it's started in ms
+    //The time left is -1 if it isn't known yet, for instance while waiting for a readiness probe
+    public void waitingFor(LaunchEntry entry, long timeLeft);
+    //Called right after an entry has been started or skipped
+    public void entryLaunched(LaunchEntry entry, boolean started);
+    //Called every time the engine has a new snapshot of where it is, after it's woken up. Should return quickly
+    public void stateChanged(LaunchState state);
+}
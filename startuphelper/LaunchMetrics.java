@@ -0,0 +1,260 @@
+package startuphelper;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//Counters and histograms of a run, readable over JMX while StartupHelper is running, with jconsole or any other JMX client
+//(for a client on another machine, start StartupHelper with the usual 'com.sun.management.jmxremote' options)
+//Everything is updated with atomic operations, so recording never waits, from whichever thread the engine does it on
+public class LaunchMetrics implements LaunchMetricsMBean {
+    protected static final String OBJECT_NAME = "startuphelper:type=LaunchMetrics";
+    protected static final int FAILURE_NOT_FOUND = 0, FAILURE_IO = 1, FAILURE_SECURITY = 2, FAILURE_OTHER = 3;
+
+    private final LaunchEngine engine;
+    private final long jvmStartTime;
+    //All times are System.currentTimeMillis() values, -1 until they've happened
+    private volatile long runStartTime = -1, runEndTime = -1, pausedSince = -1;
+    private final AtomicLong firstLaunchTime = new AtomicLong(-1);
+    //The time spent paused before the current pause, in ms
+    private volatile long pausedTime = 0;
+    private final AtomicLong startedCount = new AtomicLong(), skippedCount = new AtomicLong();
+    private final AtomicLongArray failureCounts = new AtomicLongArray(4);
+    private final LatencyHistogram spawnLatencies = new LatencyHistogram(), waits = new LatencyHistogram();
+
+    public LaunchMetrics(LaunchEngine engine) {
+        this.engine = engine;
+        jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    //Makes the metrics readable over JMX. Starting the JMX server takes a while, so that's done on a thread of its own,
+    // so it doesn't hold up the first program
+    protected void register() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                    ObjectName name = new ObjectName(OBJECT_NAME);
+                    if (server.isRegistered(name)) server.unregisterMBean(name);
+                    server.registerMBean(LaunchMetrics.this, name);
+                    Util.debugPrint(Util.DEBUG_DETAILED, "Launch metrics available over JMX as '"+OBJECT_NAME+"'");
+                } catch (JMException jme) {
+                    Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't make the launch metrics available over JMX ("+jme+")");
+                } catch (SecurityException se) {
+                    Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while making the launch metrics available over JMX: "+se);
+                }
+            }
+        }, "JMX registration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected void runStarted(long time) {
+        runStartTime = time;
+    }
+    protected void runFinished(long time) {
+        runEndTime = time;
+    }
+    protected void paused(long time) {
+        pausedSince = time;
+    }
+    protected void resumed(long time) {
+        if (pausedSince == -1) return;
+        pausedTime += time - pausedSince;
+        pausedSince = -1;
+    }
+    //'waitTime' is how long the entry waited for its turn, in ms
+    protected void entryLaunched(boolean started, long waitTime) {
+        if (started) startedCount.incrementAndGet();
+        else skippedCount.incrementAndGet();
+        waits.add(waitTime * 1000);
+    }
+    //'spawnTime' is in ns
+    protected void programStarted(long time, long spawnTime) {
+        firstLaunchTime.compareAndSet(-1, time);
+        if (spawnTime >= 0) spawnLatencies.add(spawnTime / 1000);
+    }
+    protected void programFailed(int failureType) {
+        failureCounts.incrementAndGet(failureType);
+    }
+
+    @Override
+    public int getProgramCount() {
+        return engine.getEntryCount();
+    }
+    @Override
+    public int getRemainingCount() {
+        return engine.getRemainingCount();
+    }
+    @Override
+    public int getStartedCount() {
+        return (int) startedCount.get();
+    }
+    @Override
+    public int getSkippedCount() {
+        return (int) skippedCount.get();
+    }
+    @Override
+    public String getNextProgram() {
+        LaunchEntry nextEntry = engine.getState().getNextEntry();
+        return nextEntry != null ? nextEntry.getProgram() : null;
+    }
+    @Override
+    public boolean isPaused() {
+        return engine.isPaused();
+    }
+    @Override
+    public boolean isFinished() {
+        return runEndTime != -1;
+    }
+
+    //The end of the run, or now if it's still going
+    private long getEndTime() {
+        return runEndTime != -1 ? runEndTime : System.currentTimeMillis();
+    }
+    @Override
+    public long getRunTime() {
+        return runStartTime != -1 ? getEndTime() - runStartTime : 0;
+    }
+    @Override
+    public long getWaitingTime() {
+        return getRunTime() - getPausedTime();
+    }
+    @Override
+    public long getPausedTime() {
+        long currentPause = pausedSince;
+        return pausedTime + (currentPause != -1 ? getEndTime() - currentPause : 0);
+    }
+    @Override
+    public long getTimeToRunStart() {
+        return runStartTime != -1 ? runStartTime - jvmStartTime : -1;
+    }
+    @Override
+    public long getTimeToFirstLaunch() {
+        long firstLaunch = firstLaunchTime.get();
+        return firstLaunch != -1 ? firstLaunch - jvmStartTime : -1;
+    }
+
+    @Override
+    public long getSpawnCount() {
+        return spawnLatencies.getCount();
+    }
+    @Override
+    public double getSpawnLatencyMean() {
+        return spawnLatencies.getMean() / 1000.0;
+    }
+    @Override
+    public double getSpawnLatencyMax() {
+        return spawnLatencies.getMax() / 1000.0;
+    }
+    @Override
+    public double getSpawnLatency50thPercentile() {
+        return spawnLatencies.getPercentile(50) / 1000.0;
+    }
+    @Override
+    public double getSpawnLatency90thPercentile() {
+        return spawnLatencies.getPercentile(90) / 1000.0;
+    }
+    @Override
+    public double getSpawnLatency99thPercentile() {
+        return spawnLatencies.getPercentile(99) / 1000.0;
+    }
+    @Override
+    public String[] getSpawnLatencyHistogram() {
+        return spawnLatencies.toLines();
+    }
+    @Override
+    public double getWaitMean() {
+        return waits.getMean() / 1000.0;
+    }
+    @Override
+    public double getWaitMax() {
+        return waits.getMax() / 1000.0;
+    }
+    @Override
+    public String[] getWaitHistogram() {
+        return waits.toLines();
+    }
+
+    @Override
+    public long getFailureCount() {
+        long total = 0;
+        for (int i = 0; i < failureCounts.length(); i++) total += failureCounts.get(i);
+        return total;
+    }
+    @Override
+    public long getNotFoundFailures() {
+        return failureCounts.get(FAILURE_NOT_FOUND);
+    }
+    @Override
+    public long getIoFailures() {
+        return failureCounts.get(FAILURE_IO);
+    }
+    @Override
+    public long getSecurityFailures() {
+        return failureCounts.get(FAILURE_SECURITY);
+    }
+    @Override
+    public long getOtherFailures() {
+        return failureCounts.get(FAILURE_OTHER);
+    }
+}
+
+
+//Counts durations (in microseconds) in fixed buckets, from 0.1 ms to 5 minutes, plus one for anything longer
+//Percentiles are the upper bound of the bucket they fall in, which is precise enough to see where the time goes
+class LatencyHistogram {
+    private static final long[] BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+            1000000, 2500000, 5000000, 10000000, 30000000, 60000000, 120000000, 300000000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+    protected void add(long duration) {
+        duration = Math.max(0, duration);
+        int bucket = 0;
+        while (bucket < BOUNDS.length && duration > BOUNDS[bucket]) bucket++;
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(duration);
+        long currentMax = max.get();
+        while (duration > currentMax && !max.compareAndSet(currentMax, duration)) currentMax = max.get();
+    }
+
+    protected long getCount() {
+        return count.get();
+    }
+    protected double getMean() {
+        long currentCount = count.get();
+        return currentCount > 0 ? (double) sum.get() / currentCount : 0;
+    }
+    protected long getMax() {
+        return max.get();
+    }
+    //Returns the duration that 'percentile' percent of the durations stayed below, or 0 if there aren't any yet
+    protected long getPercentile(int percentile) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0), seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(BOUNDS[i], max.get());
+        }
+        return max.get();
+    }
+    //A line per bucket, like '<= 2.5 ms: 3', for reading it in a JMX client
+    protected String[] toLines() {
+        String[] lines = new String[BOUNDS.length + 1];
+        for (int i = 0; i < BOUNDS.length; i++) lines[i] = "<= "+formatMillis(BOUNDS[i])+" ms: "+counts.get(i);
+        lines[BOUNDS.length] = "> "+formatMillis(BOUNDS[BOUNDS.length - 1])+" ms: "+counts.get(BOUNDS.length);
+        return lines;
+    }
+    private static String formatMillis(long micros) {
+        if (micros % 1000 == 0) return String.valueOf(micros / 1000);
+        return String.valueOf(micros / 1000.0);
+    }
+}
@@ -0,0 +1,42 @@
+package startuphelper;
+
+//What a running StartupHelper shows over JMX, as 'startuphelper:type=LaunchMetrics'. See LaunchMetrics
+//Times are in ms, unless the name says otherwise
+public interface LaunchMetricsMBean {
+    //The program list
+    public int getProgramCount();
+    public int getRemainingCount();
+    public int getStartedCount();
+    public int getSkippedCount();
+    public String getNextProgram();
+    public boolean isPaused();
+    public boolean isFinished();
+
+    //Where the time went. Waiting is the time since the run started that it wasn't paused
+    public long getRunTime();
+    public long getWaitingTime();
+    public long getPausedTime();
+    //From the start of the JVM to the start of the run, and to the first program that was started. -1 if that hasn't happened yet
+    public long getTimeToRunStart();
+    public long getTimeToFirstLaunch();
+
+    //How long starting a program took, from asking the OS to start it until it was running
+    public long getSpawnCount();
+    public double getSpawnLatencyMean();
+    public double getSpawnLatencyMax();
+    public double getSpawnLatency50thPercentile();
+    public double getSpawnLatency90thPercentile();
+    public double getSpawnLatency99thPercentile();
+    public String[] getSpawnLatencyHistogram();
+    //How long each program waited for its turn, from when the program before it was started
+    public double getWaitMean();
+    public double getWaitMax();
+    public String[] getWaitHistogram();
+
+    //Programs that couldn't be started, by what went wrong
+    public long getFailureCount();
+    public long getNotFoundFailures();
+    public long getIoFailures();
+    public long getSecurityFailures();
+    public long getOtherFailures();
+}
@@ -0,0 +1,111 @@
+package startuphelper;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//The parsed program list: the global settings, the instructions in order, and any problems found while parsing
+//Immutable, so it can be cached on disk and handed to the worker without copying
+public class LaunchPlan implements Serializable {
+    private static final long serialVersionUID = 1L;
+    protected static final int DEFAULT_START_WAIT = 10000, DEFAULT_BETWEEN_WAIT = 10000;
+
+    //All times are in ms. A parallelism of 0 means 'one per processor'
+    private final int startWait, betweenWait, adaptiveMinWait, adaptiveMaxWait, parallelism;
+    private final boolean alwaysOnTop;
+    //If true, the wait after each program is learned from how long it kept the computer busy on earlier runs
+    private final boolean autoWait;
+    //How many of the next programs to read into the disk cache while waiting (0 is off), and how fast in MB per second
+    private final int prefetchCount, prefetchRate;
+    //When the system counts as idle, for the entries marked 'idle': CPU and disk use in percent, and for how long in ms
+    private final int idleCpuLimit, idleDiskLimit, idleTime;
+    //Holds programs back while the system is short on memory or busy with IO. Null if the list doesn't have a 'PressureLimit' line
+    private final PressureGate pressureGate;
+    private final List<Instruction> instructions;
+    private final List<String> diagnostics;
+    //The resource classes from the 'class' lines, plus 'background', by name
+    private final Map<String, ResourceClass> resourceClasses;
+
+    protected LaunchPlan(int startWait, int betweenWait, int adaptiveMinWait, int adaptiveMaxWait, int parallelism,
+            boolean alwaysOnTop, boolean autoWait, int prefetchCount, int prefetchRate, int idleCpuLimit, int idleDiskLimit, int idleTime,
+            PressureGate pressureGate, List<Instruction> instructions, List<String> diagnostics, Map<String, ResourceClass> resourceClasses) {
+        this.startWait = startWait;
+        this.betweenWait = betweenWait;
+        this.adaptiveMinWait = adaptiveMinWait;
+        this.adaptiveMaxWait = adaptiveMaxWait;
+        this.parallelism = parallelism;
+        this.alwaysOnTop = alwaysOnTop;
+        this.autoWait = autoWait;
+        this.prefetchCount = prefetchCount;
+        this.prefetchRate = prefetchRate;
+        this.idleCpuLimit = idleCpuLimit;
+        this.idleDiskLimit = idleDiskLimit;
+        this.idleTime = idleTime;
+        this.pressureGate = pressureGate;
+        this.instructions = Collections.unmodifiableList(new ArrayList<Instruction>(instructions));
+        this.diagnostics = Collections.unmodifiableList(new ArrayList<String>(diagnostics));
+        this.resourceClasses = Collections.unmodifiableMap(new HashMap<String, ResourceClass>(resourceClasses));
+    }
+
+    protected int getStartWait() {
+        return startWait;
+    }
+    protected int getBetweenWait() {
+        return betweenWait;
+    }
+    protected int getAdaptiveMinWait() {
+        return adaptiveMinWait;
+    }
+    protected int getAdaptiveMaxWait() {
+        return adaptiveMaxWait;
+    }
+    protected int getParallelism() {
+        return parallelism;
+    }
+    protected boolean isAlwaysOnTop() {
+        return alwaysOnTop;
+    }
+    protected boolean isAutoWait() {
+        return autoWait;
+    }
+    protected int getPrefetchCount() {
+        return prefetchCount;
+    }
+    protected int getPrefetchRate() {
+        return prefetchRate;
+    }
+    protected int getIdleCpuLimit() {
+        return idleCpuLimit;
+    }
+    protected int getIdleDiskLimit() {
+        return idleDiskLimit;
+    }
+    protected int getIdleTime() {
+        return idleTime;
+    }
+    protected PressureGate getPressureGate() {
+        return pressureGate;
+    }
+    protected List<Instruction> getInstructions() {
+        return instructions;
+    }
+    protected List<String> getDiagnostics() {
+        return diagnostics;
+    }
+    //Returns the resource class with that name, or null if there isn't one
+    protected ResourceClass getResourceClass(String name) {
+        return resourceClasses.get(name);
+    }
+
+    //Counts the programs that will be started (or asked about)
+    protected int getLaunchCount() {
+        int launchCount = 0;
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof LaunchInstruction) launchCount++;
+        }
+        return launchCount;
+    }
+}
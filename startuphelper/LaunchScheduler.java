@@ -0,0 +1,369 @@
+package startuphelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+//Turns the program queue into a dependency graph, and decides which programs can be started when
+//Program lines can end with attributes after a '|', like '/usr/bin/chat | name=chat after=mail group=messaging':
+//  name=[name]     Gives the entry a name, so other entries can depend on it
+//  after=[a,b]     Only start this entry once the named entries (or groups) have been started. 'none' means don't wait at all
+//  group=[name]    Consecutive entries in the same group don't wait for each other, and the entry after the group waits for all of them
+//  ready=[probe]   The entries after this one start as soon as the probe says it's ready, instead of after 'BetweenWait'
+//  timeout=[s]     The longest time to wait for the readiness probe
+//  idle[=s]        Once its turn comes, this entry also waits for the system to become idle, but no longer than the deadline
+//                  The entries below it don't wait for it, unless they name it in 'after'
+//Entries without 'after' wait for the entry (or group) above them, so plain program lists are started one by one, like before
+public class LaunchScheduler {
+    private final List<LaunchEntry> entries = new ArrayList<LaunchEntry>();
+    private final int startWait, parallelism;
+    private long startTime;
+    //Whether the system is idle, which lets the entries marked 'idle' start before their deadline
+    private boolean isSystemIdle = false;
+
+    public LaunchScheduler(List<Instruction> instructions, int startWait, int betweenWait, int parallelism) {
+        this.startWait = startWait;
+        this.parallelism = Math.max(1, parallelism);
+        buildGraph(instructions, betweenWait);
+    }
+
+    //The names in 'after' were already checked by ProgramlistParser, so anything unknown here is simply skipped
+    private void buildGraph(List<Instruction> instructions, int betweenWait) {
+        //Names and groups can both be used in 'after', so they share a map
+        Map<String, List<LaunchEntry>> namedEntries = new HashMap<String, List<LaunchEntry>>();
+        //The entries a new entry without an 'after' attribute waits for
+        List<LaunchEntry> previousStep = new ArrayList<LaunchEntry>();
+        //The group that's currently being added to, and what all of its members wait for
+        String currentGroup = null;
+        List<LaunchEntry> currentGroupDependencies = null, currentGroupMembers = null;
+        int extraWait = 0;
+
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof WaitInstruction) {
+                extraWait += ((WaitInstruction) instruction).getWaitTime();
+                continue;
+            }
+            else if (instruction instanceof SetBetweenWaitInstruction) {
+                betweenWait = ((SetBetweenWaitInstruction) instruction).getBetweenWait();
+                continue;
+            }
+            else if (!(instruction instanceof LaunchInstruction)) continue;
+
+            LaunchEntry entry = new LaunchEntry((LaunchInstruction) instruction);
+            entry.setExtraWait(extraWait);
+            entry.setBetweenWait(betweenWait);
+            extraWait = 0;
+
+            //Figure out what this entry has to wait for
+            List<LaunchEntry> dependencies;
+            boolean joinsCurrentGroup = entry.getGroup() != null && entry.getGroup().equals(currentGroup);
+            if (entry.getAfter() != null) dependencies = resolveAfter(entry, namedEntries);
+            else if (joinsCurrentGroup) dependencies = currentGroupDependencies;
+            else dependencies = previousStep;
+            entry.getDependencies().addAll(dependencies);
+
+            if (joinsCurrentGroup) {
+                currentGroupMembers.add(entry);
+            }
+            else if (entry.getGroup() != null) {
+                //Start a new group. Whatever comes after it waits for all of its members
+                currentGroup = entry.getGroup();
+                currentGroupDependencies = new ArrayList<LaunchEntry>(dependencies);
+                currentGroupMembers = new ArrayList<LaunchEntry>();
+                currentGroupMembers.add(entry);
+                namedEntries.put(currentGroup, currentGroupMembers);
+                previousStep = currentGroupMembers;
+            }
+            //Idle entries are started whenever the system allows it, so the lines below them aren't held up by them
+            else if (!entry.isIdle()) {
+                currentGroup = null;
+                previousStep = new ArrayList<LaunchEntry>();
+                previousStep.add(entry);
+            }
+
+            if (entry.getName() != null) {
+                List<LaunchEntry> namedEntry = new ArrayList<LaunchEntry>();
+                namedEntry.add(entry);
+                namedEntries.put(entry.getName(), namedEntry);
+            }
+            entries.add(entry);
+        }
+        Util.debugPrint(Util.DEBUG_BASIC, "Launch graph built with "+entries.size()+" entries, parallelism "+parallelism);
+    }
+
+    //Looks up the entries named in an 'after' attribute. Only names from lines above can be used, so there can't be any loops
+    private List<LaunchEntry> resolveAfter(LaunchEntry entry, Map<String, List<LaunchEntry>> namedEntries) {
+        List<LaunchEntry> dependencies = new ArrayList<LaunchEntry>();
+        if (entry.getAfter().length() == 0 || entry.getAfter().equalsIgnoreCase("none")) return dependencies;
+
+        for (String name : entry.getAfter().split(",")) {
+            List<LaunchEntry> namedEntry = namedEntries.get(name);
+            if (namedEntry != null) dependencies.addAll(namedEntry);
+        }
+        return dependencies;
+    }
+
+    //Switches to the entries of a reloaded program list, without changing what's already been started
+    //Entries that are in both lists (same program, attributes and '?') are kept, along with whether and when they were started,
+    // so a countdown that's going on keeps going. The ones that haven't been started yet get the waits and 'after's of the new list
+    //Started entries that aren't in the new list anymore are dropped. Returns how many entries were kept
+    protected synchronized int merge(List<Instruction> instructions, int betweenWait) {
+        List<LaunchEntry> newEntries = new LaunchScheduler(instructions, startWait, betweenWait, parallelism).entries;
+        //The current entries by program, so lines that were moved are still found
+        Map<String, List<LaunchEntry>> oldEntries = new HashMap<String, List<LaunchEntry>>();
+        for (LaunchEntry entry : entries) {
+            List<LaunchEntry> sameProgram = oldEntries.get(entry.getProgram());
+            if (sameProgram == null) {
+                sameProgram = new LinkedList<LaunchEntry>();
+                oldEntries.put(entry.getProgram(), sameProgram);
+            }
+            sameProgram.add(entry);
+        }
+
+        //Which entry takes the place of each new one
+        Map<LaunchEntry, LaunchEntry> mergedEntries = new IdentityHashMap<LaunchEntry, LaunchEntry>();
+        int keptCount = 0;
+        for (LaunchEntry newEntry : newEntries) {
+            LaunchEntry mergedEntry = newEntry;
+            List<LaunchEntry> sameProgram = oldEntries.get(newEntry.getProgram());
+            if (sameProgram != null) {
+                //If the same line is in the list more than once, match them up from top to bottom
+                for (Iterator<LaunchEntry> iterator = sameProgram.iterator(); iterator.hasNext(); ) {
+                    LaunchEntry oldEntry = iterator.next();
+                    if (oldEntry.getInstruction().isSameLaunch(newEntry.getInstruction())) {
+                        iterator.remove();
+                        mergedEntry = oldEntry;
+                        keptCount++;
+                        break;
+                    }
+                }
+            }
+            mergedEntries.put(newEntry, mergedEntry);
+        }
+        for (LaunchEntry newEntry : newEntries) {
+            LaunchEntry mergedEntry = mergedEntries.get(newEntry);
+            //What already happened stays the way it was
+            if (!mergedEntry.isWaiting()) continue;
+            mergedEntry.setExtraWait(newEntry.getExtraWait());
+            mergedEntry.setBetweenWait(newEntry.getBetweenWait());
+            List<LaunchEntry> dependencies = new ArrayList<LaunchEntry>(newEntry.getDependencies());
+            mergedEntry.getDependencies().clear();
+            for (LaunchEntry dependency : dependencies) mergedEntry.getDependencies().add(mergedEntries.get(dependency));
+        }
+
+        entries.clear();
+        for (LaunchEntry newEntry : newEntries) entries.add(mergedEntries.get(newEntry));
+        Util.debugPrint(Util.DEBUG_BASIC, "Merged the reloaded list: "+entries.size()+" entries, "+keptCount+" of them kept.");
+        return keptCount;
+    }
+
+    protected synchronized void start(long time) {
+        startTime = time;
+    }
+    protected synchronized void setSystemIdle(boolean isSystemIdle) {
+        this.isSystemIdle = isSystemIdle;
+    }
+    protected synchronized boolean isSystemIdle() {
+        return isSystemIdle;
+    }
+    //Returns whether there are entries marked 'idle' that haven't been started yet
+    protected synchronized boolean hasIdleEntries() {
+        for (LaunchEntry entry : entries) {
+            if (entry.isWaiting() && entry.isIdle()) return true;
+        }
+        return false;
+    }
+
+    protected synchronized boolean isFinished() {
+        for (LaunchEntry entry : entries) {
+            if (entry.isWaiting()) return false;
+        }
+        return true;
+    }
+    //Returns up to 'count' entries that haven't been started yet, in the order of the list
+    protected synchronized List<LaunchEntry> getUpcomingEntries(int count) {
+        List<LaunchEntry> upcomingEntries = new ArrayList<LaunchEntry>();
+        for (LaunchEntry entry : entries) {
+            if (upcomingEntries.size() >= count) break;
+            if (entry.isWaiting()) upcomingEntries.add(entry);
+        }
+        return upcomingEntries;
+    }
+    protected synchronized int getEntryCount() {
+        return entries.size();
+    }
+    protected synchronized int getRemainingCount() {
+        int remaining = 0;
+        for (LaunchEntry entry : entries) {
+            if (entry.isWaiting()) remaining++;
+        }
+        return remaining;
+    }
+
+    //Returns the time from which the entries after 'dependency' can start counting their own wait, or -1 if that isn't known yet
+    //For a program with a readiness probe that's the moment it became ready. If 'worstCase' is set, a probe that's still running
+    // counts as ready at its timeout, which is used for drawing the progress
+    private long getDoneTime(LaunchEntry dependency, int betweenWait, boolean worstCase) {
+        if (dependency.isWaiting()) return -1;
+        if (dependency.isProbed()) {
+            if (dependency.isReady()) return dependency.getReadyTime();
+            if (worstCase) return dependency.getLaunchTime() + dependency.getReadinessTimeout();
+            return -1;
+        }
+        return dependency.getLaunchTime() + dependency.getWaitAfter(betweenWait);
+    }
+    //Returns the time from which an entry started waiting, or -1 if it's still waiting for an entry it depends on
+    private long getWaitStartTime(LaunchEntry entry, boolean worstCase) {
+        if (entry.getDependencies().isEmpty()) return startTime + startWait;
+        long waitStartTime = 0;
+        for (LaunchEntry dependency : entry.getDependencies()) {
+            long doneTime = getDoneTime(dependency, entry.getBetweenWait(), worstCase);
+            if (doneTime == -1) return -1;
+            waitStartTime = Math.max(waitStartTime, doneTime);
+        }
+        return waitStartTime;
+    }
+    //Returns the time at which an entry can be started, or -1 if that isn't known yet
+    //Entries marked 'idle' can start then if the system is idle, and otherwise at their deadline
+    private long getReadyTime(LaunchEntry entry, boolean worstCase) {
+        long waitStartTime = getWaitStartTime(entry, worstCase);
+        if (waitStartTime == -1) return -1;
+        if (entry.isIdle() && !isSystemIdle) return waitStartTime + entry.getExtraWait() + entry.getIdleDeadline();
+        return waitStartTime + entry.getExtraWait();
+    }
+    private long getReadyTime(LaunchEntry entry) {
+        return getReadyTime(entry, false);
+    }
+    //Returns the time an entry started waiting, for drawing the progress. For the first entry that's the start of the run
+    private long getDisplayStartTime(LaunchEntry entry) {
+        long latestLaunch = startTime;
+        for (LaunchEntry dependency : entry.getDependencies()) {
+            latestLaunch = Math.max(latestLaunch, dependency.getLaunchTime());
+        }
+        return latestLaunch;
+    }
+
+    //Returns the time from which the engine has been waiting to start an entry
+    protected synchronized long getWaitingSince(LaunchEntry entry) {
+        return getDisplayStartTime(entry);
+    }
+
+    //Returns the time at which a started program stops counting as starting up, or Long.MAX_VALUE if its probe hasn't finished
+    private long getSlotFreeTime(LaunchEntry entry) {
+        if (entry.isProbed()) return entry.isReady() ? entry.getReadyTime() : Long.MAX_VALUE;
+        return entry.getLaunchTime() + entry.getWaitAfter(entry.getBetweenWait());
+    }
+    //Counts the programs that were started recently enough that they're still considered to be starting up
+    private int getRunningCount(long time) {
+        int running = 0;
+        for (LaunchEntry entry : entries) {
+            if (entry.getState() == LaunchEntry.STATE_LAUNCHED && getSlotFreeTime(entry) > time) running++;
+        }
+        return running;
+    }
+
+    //Returns the next entry that should be started or skipped right now, or null if there isn't any
+    //Entries forced by the Start and Skip buttons are always returned, others only if there's room for another program
+    protected synchronized LaunchEntry pollReadyEntry(long time) {
+        boolean hasFreeSlot = getRunningCount(time) < parallelism;
+        for (LaunchEntry entry : entries) {
+            if (!entry.isWaiting()) continue;
+            if (entry.isForced()) return entry;
+            long readyTime = getReadyTime(entry);
+            if (hasFreeSlot && readyTime != -1 && readyTime <= time) return entry;
+        }
+        return null;
+    }
+
+    //Returns the earliest time at which something can be started, so the worker knows how long it can sleep
+    //That's either the time an entry is ready, or, if ready entries are waiting for room, the time a running program stops counting
+    //Returns Long.MAX_VALUE if there's nothing left to wait for
+    protected synchronized long getNextDeadline(long time) {
+        long deadline = Long.MAX_VALUE;
+        boolean isWaitingForSlot = false;
+        for (LaunchEntry entry : entries) {
+            if (!entry.isWaiting()) continue;
+            if (entry.isForced()) return time;
+            long readyTime = getReadyTime(entry);
+            if (readyTime == -1) continue;
+            if (readyTime <= time) isWaitingForSlot = true;
+            else deadline = Math.min(deadline, readyTime);
+        }
+        if (isWaitingForSlot) {
+            //Programs that are waiting for their probe aren't included, the probe wakes the worker up when it's done
+            for (LaunchEntry entry : entries) {
+                long slotFreeTime = getSlotFreeTime(entry);
+                if (entry.getState() == LaunchEntry.STATE_LAUNCHED && slotFreeTime > time && slotFreeTime != Long.MAX_VALUE) {
+                    deadline = Math.min(deadline, slotFreeTime);
+                }
+            }
+        }
+        return deadline;
+    }
+
+    //Returns the entry that'll be started first, for displaying it and for the Start and Skip buttons
+    protected synchronized LaunchEntry getNextEntry() {
+        LaunchEntry nextEntry = null;
+        long nextReadyTime = Long.MAX_VALUE;
+        for (LaunchEntry entry : entries) {
+            if (!entry.isWaiting()) continue;
+            if (entry.isForced()) return entry;
+            //Entries waiting for a probe are expected at the probe's timeout
+            long readyTime = getReadyTime(entry, true);
+            if (readyTime != -1 && readyTime < nextReadyTime) {
+                nextEntry = entry;
+                nextReadyTime = readyTime;
+            }
+        }
+        return nextEntry;
+    }
+
+    //Returns when an entry is expected to be started, or -1 if that isn't known yet. Entries waiting for a probe are expected at its timeout
+    protected synchronized long getExpectedReadyTime(LaunchEntry entry) {
+        return getReadyTime(entry, true);
+    }
+    //Returns the entry forced by the Start or Skip button, or null if there isn't one. Used while paused
+    protected synchronized LaunchEntry pollForcedEntry() {
+        for (LaunchEntry entry : entries) {
+            if (entry.isWaiting() && entry.isForced()) return entry;
+        }
+        return null;
+    }
+
+    //Returns how much of the wait for an entry is left, as a percentage
+    protected synchronized long getPercentageWaitLeft(LaunchEntry entry, long time) {
+        long readyTime = getReadyTime(entry, true);
+        if (readyTime == -1) return 100;
+        long waitStartTime = getDisplayStartTime(entry);
+        //A wait can be 0 ms, don't divide by that
+        long waitTime = Math.max(1, readyTime - waitStartTime);
+        return Math.max(0, Math.min(100, 100 * (readyTime - time) / waitTime));
+    }
+
+    protected synchronized void setLaunched(LaunchEntry entry, boolean launched, long time) {
+        entry.setLaunched(launched, time);
+    }
+    protected synchronized void setReady(LaunchEntry entry, long time) {
+        if (!entry.isReady()) entry.setReadyTime(time);
+    }
+    //Start or skip the next entry as soon as possible
+    protected synchronized void forceNextEntry(boolean launch) {
+        LaunchEntry entry = getNextEntry();
+        if (entry != null) entry.setForced(launch);
+    }
+    protected synchronized void forceEntry(LaunchEntry entry, boolean launch) {
+        if (entry.isWaiting()) entry.setForced(launch);
+    }
+
+    //Move all the times forward, so time spent paused doesn't count as waiting
+    protected synchronized void shiftTimes(long timeToAdd) {
+        startTime += timeToAdd;
+        for (LaunchEntry entry : entries) {
+            if (!entry.isWaiting()) entry.shiftLaunchTime(timeToAdd);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package startuphelper;
+
+//A snapshot of where a LaunchEngine is, for drawing it without touching the engine or its scheduler
+//The engine makes a new one every time it wakes up, and never changes one it's handed out, so it can be read from any thread
+public class LaunchState {
+    protected static final LaunchState NOT_STARTED = new LaunchState(false, 0, null, 0, -1, null, false);
+
+    private final boolean isPaused;
+    private final long pausedAt;
+    private final LaunchEntry nextEntry;
+    //When the engine started waiting for 'nextEntry', and when it's expected to start it (-1 if that isn't known yet)
+    private final long waitStartTime, readyTime;
+    //What 'nextEntry' is being held back for ('memory', 'IO' or 'memory/IO'), or null if it isn't. See PressureGate
+    private final String holdReason;
+    private final boolean isFinished;
+
+    protected LaunchState(boolean isPaused, long pausedAt, LaunchEntry nextEntry, long waitStartTime, long readyTime, String holdReason,
+            boolean isFinished) {
+        this.isPaused = isPaused;
+        this.pausedAt = pausedAt;
+        this.nextEntry = nextEntry;
+        this.waitStartTime = waitStartTime;
+        this.readyTime = readyTime;
+        this.holdReason = holdReason;
+        this.isFinished = isFinished;
+    }
+
+    protected boolean isPaused() {
+        return isPaused;
+    }
+    //The entry that'll be started next, or null if there's nothing left to wait for
+    protected LaunchEntry getNextEntry() {
+        return nextEntry;
+    }
+    protected String getHoldReason() {
+        return holdReason;
+    }
+    protected boolean isFinished() {
+        return isFinished;
+    }
+
+    //Returns how much of the wait for the next entry is left at 'time', in 'resolution' steps (so 100 gives a percentage)
+    //While paused, the wait stands still
+    protected int getWaitLeft(long time, int resolution) {
+        if (nextEntry == null || readyTime == -1) return resolution;
+        if (isPaused) time = Math.min(time, pausedAt);
+        //A wait can be 0 ms, don't divide by that
+        long waitTime = Math.max(1, readyTime - waitStartTime);
+        return (int) Math.max(0, Math.min(resolution, resolution * (readyTime - time) / waitTime));
+    }
+    //Returns how long it is from 'time' until the next entry is expected to be started in ms, or -1 if that isn't known
+    protected long getTimeLeft(long time) {
+        if (nextEntry == null || readyTime == -1) return -1;
+        if (isPaused) time = Math.min(time, pausedAt);
+        return Math.max(0, readyTime - time);
+    }
+    //Returns the first time after 'time' at which 'getWaitLeft' returns something else, or -1 if that won't happen with this state
+    protected long getNextChangeTime(long time, int resolution) {
+        if (nextEntry == null || readyTime == -1 || isPaused) return -1;
+        int waitLeft = getWaitLeft(time, resolution);
+        if (waitLeft == 0) return -1;
+        long waitTime = Math.max(1, readyTime - waitStartTime);
+        //'getWaitLeft' drops below 'waitLeft' once 'resolution * (readyTime - time)' is less than 'waitLeft * waitTime'
+        return Math.max(time + 1, readyTime - waitLeft * waitTime / resolution + 1);
+    }
+}
@@ -0,0 +1,97 @@
+package startuphelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+//Reads how busy the system currently is, so the wait between programs can be adjusted to it
+//Only works on systems that have a '/proc' filesystem (Linux). Everywhere else the load is reported as unknown (-1)
+public class LoadMonitor {
+    protected static final String PROC_STAT = "/proc/stat", PROC_LOADAVG = "/proc/loadavg";
+
+    private final int processorCount;
+    private final boolean isSupported;
+    //The CPU counters at the last sample, and the CPU busy fraction that was measured then. Null before the first sample
+    private long[] lastCpuTimes;
+    private double lastCpuLoad = 0;
+
+    public LoadMonitor() {
+        processorCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        isSupported = new File(PROC_STAT).canRead() && new File(PROC_LOADAVG).canRead();
+        Util.debugPrint(Util.DEBUG_DETAILED, "LoadMonitor supported: "+isSupported+", processors: "+processorCount);
+    }
+
+    protected boolean isSupported() {
+        return isSupported;
+    }
+
+    //Returns the system load as a value between 0 (idle) and 1 (fully busy), or -1 if it couldn't be determined
+    //The load is the highest of the CPU busy fraction since the last call and the number of runnable tasks per processor
+    //This never waits, so the first call only remembers the CPU counters and returns -1. Calls less than a clock tick apart
+    // reuse the CPU busy fraction of the call before
+    protected synchronized double sampleLoad() {
+        if (!isSupported) return -1;
+        try {
+            long[] cpuTimes = readCpuTimes();
+            if (lastCpuTimes == null) {
+                lastCpuTimes = cpuTimes;
+                return -1;
+            }
+            long total = cpuTimes[0] - lastCpuTimes[0];
+            if (total > 0) {
+                lastCpuLoad = (double) (cpuTimes[1] - lastCpuTimes[1]) / total;
+                lastCpuTimes = cpuTimes;
+            }
+
+            double runnableLoad = readRunnableLoad();
+            double load = Math.min(1, Math.max(lastCpuLoad, runnableLoad));
+            Util.debugPrint(Util.DEBUG_DETAILED, "Sampled load: CPU "+lastCpuLoad+", runnable "+runnableLoad+", using "+load);
+            return load;
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while reading the system load: "+ioe);
+        } catch (Exception e) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Generic ERROR while reading the system load: "+e);
+        }
+        return -1;
+    }
+
+    //Returns the total and the busy time of all CPUs together, in clock ticks
+    //Waiting for IO counts as busy too, since a busy disk slows down starting programs just as much
+    protected static long[] readCpuTimes() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(PROC_STAT));
+        try {
+            //The first line is the combined 'cpu' line: user nice system idle iowait irq softirq steal ...
+            String[] fields = reader.readLine().trim().split("\\s+");
+            long total = 0, idle = 0;
+            for (int i = 1; i < fields.length && i <= 8; i++) {
+                long value = Long.parseLong(fields[i]);
+                total += value;
+                //Field 4 is 'idle'
+                if (i == 4) idle = value;
+            }
+            return new long[]{total, total - idle};
+        } finally {
+            reader.close();
+        }
+    }
+
+    //'/proc/loadavg' looks like '0.12 0.08 0.02 2/72 822', the fourth field being 'runnable/total' tasks
+    private double readRunnableLoad() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(PROC_LOADAVG));
+        try {
+            String[] fields = reader.readLine().trim().split("\\s+");
+            int runnable = Integer.parseInt(fields[3].substring(0, fields[3].indexOf("/")));
+            //Don't count the thread that's reading this file
+            return (double) Math.max(0, runnable - 1) / processorCount;
+        } finally {
+            reader.close();
+        }
+    }
+
+    //Picks a wait time between 'minWait' and 'maxWait', depending on how busy the system is
+    protected static int getAdaptiveWait(double load, int minWait, int maxWait) {
+        load = Math.min(1, Math.max(0, load));
+        return minWait + (int) Math.round((maxWait - minWait) * load);
+    }
+}
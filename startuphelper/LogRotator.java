@@ -0,0 +1,69 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//Keeps the log files below their maximum size, with one thread for all of them
+//The programs keep the log file open, so it can't be renamed. Instead it's copied to '[file].1' and then emptied,
+// and since it was opened for appending, the program just continues at the start of the emptied file
+//Output written between the copy and the emptying is lost, and the sizes are only checked while StartupHelper runs
+class LogRotator {
+    //How often the log sizes are checked, in ms
+    private static final long CHECK_INTERVAL = 5000;
+    private static final Map<File, Long> maxSizes = new HashMap<File, Long>();
+    private static ScheduledExecutorService checker;
+
+    static synchronized void watch(File logFile, long maxSize) {
+        //If several programs share a log, the smallest size wins
+        Long currentMaxSize = maxSizes.get(logFile);
+        if (currentMaxSize == null || maxSize < currentMaxSize) maxSizes.put(logFile, maxSize);
+        if (checker == null) {
+            checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Log rotator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            checker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    checkSizes();
+                }
+            }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //Rotates every log file that's grown too large. Also called once more when the run is finished
+    static synchronized void checkSizes() {
+        for (Map.Entry<File, Long> logEntry : maxSizes.entrySet()) {
+            File logFile = logEntry.getKey();
+            if (logFile.length() <= logEntry.getValue()) continue;
+            try {
+                Files.copy(logFile.toPath(), new File(logFile.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+                FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE);
+                try {
+                    channel.truncate(0);
+                } finally {
+                    channel.close();
+                }
+                Util.debugPrint(Util.DEBUG_DETAILED, "Rotated log file '"+logFile+"'");
+            } catch (IOException ioe) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while rotating log file '"+logFile+"': "+ioe);
+            } catch (SecurityException se) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while rotating log file '"+logFile+"': "+se);
+            }
+        }
+    }
+}
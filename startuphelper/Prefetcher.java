@@ -0,0 +1,121 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+//Reads the files of the next few programs while StartupHelper is waiting, so they're in the disk cache when they're started
+//Turned on with a 'prefetch [count] [MB per second]' line. Besides the program itself, an entry can list more files
+// (or folders) to read with 'prefetch=[file1,file2]'
+//The reading is throttled to the given speed and done on one low-priority thread, so it doesn't slow down the program that's starting
+public class Prefetcher implements Runnable {
+    protected static final int DEFAULT_RATE = 16;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    //Don't read more than this from one file, in bytes, and don't queue more than this many files in total
+    private static final long MAX_FILE_SIZE = 256L * 1024 * 1024;
+    private static final int MAX_QUEUED_PATHS = 10000;
+
+    private final long bytesPerSecond;
+    private final BlockingQueue<File> queue = new LinkedBlockingQueue<File>();
+    //Everything that's been queued before, so nothing is read twice
+    private final Set<String> queuedPaths = new HashSet<String>();
+    private final Thread thread;
+    private volatile boolean isStopped = false;
+    //When the next read is allowed, to stay within the budget
+    private long nextReadTime;
+    private long prefetchedBytes = 0;
+
+    //'rate' is in MB per second
+    public Prefetcher(int rate) {
+        bytesPerSecond = Math.max(1, rate) * 1024L * 1024;
+        thread = new Thread(this, "Prefetcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    //Queues the files of the entries that haven't been queued yet
+    protected void prefetch(List<LaunchEntry> entries) {
+        synchronized (queuedPaths) {
+            for (LaunchEntry entry : entries) {
+                queue(new File(entry.getProgram()), 0);
+                for (String path : entry.getPrefetchFiles()) queue(new File(path), 0);
+            }
+        }
+    }
+    private void queue(File file, int depth) {
+        if (!queuedPaths.add(file.getPath())) return;
+        if (file.isDirectory()) {
+            //Only go a few folders deep, and stop once there's enough, so a huge folder doesn't flood the queue
+            File[] files = file.listFiles();
+            if (files == null || depth > 3) return;
+            for (File child : files) {
+                if (queuedPaths.size() >= MAX_QUEUED_PATHS) return;
+                queue(child, depth + 1);
+            }
+        }
+        else if (file.isFile()) queue.add(file);
+    }
+
+    protected void stop() {
+        isStopped = true;
+        thread.interrupt();
+        Util.debugPrint(Util.DEBUG_DETAILED, "Prefetched "+(prefetchedBytes / 1024)+" KB");
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        nextReadTime = System.currentTimeMillis();
+        while (!isStopped) {
+            try {
+                read(queue.take(), buffer);
+            } catch (InterruptedException ie) {
+                break;
+            }
+        }
+    }
+
+    //Reads the whole file and throws the data away. Reading it is enough to get it in the disk cache
+    private void read(File file, ByteBuffer buffer) throws InterruptedException {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                long fileBytes = 0;
+                int bytesRead;
+                while (!isStopped && fileBytes < MAX_FILE_SIZE) {
+                    waitForBudget();
+                    buffer.clear();
+                    bytesRead = channel.read(buffer);
+                    if (bytesRead <= 0) break;
+                    fileBytes += bytesRead;
+                    //Reading this much is allowed again once enough time has passed
+                    nextReadTime += bytesRead * 1000L / bytesPerSecond;
+                }
+                prefetchedBytes += fileBytes;
+                Util.debugPrint(Util.DEBUG_VERBOSE, "Prefetched '"+file+"' ("+(fileBytes / 1024)+" KB)");
+            } finally {
+                channel.close();
+            }
+        } catch (IOException ioe) {
+            //Not being able to prefetch something isn't a problem, it'll just be read when the program starts
+            Util.debugPrint(Util.DEBUG_DETAILED, "Can't prefetch '"+file+"' ("+ioe+")");
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "Not allowed to prefetch '"+file+"' ("+se+")");
+        }
+    }
+
+    private void waitForBudget() throws InterruptedException {
+        long currentTime = System.currentTimeMillis();
+        //Unused budget doesn't pile up, so there's never a burst after an idle period
+        if (nextReadTime < currentTime) nextReadTime = currentTime;
+        else if (nextReadTime > currentTime) Thread.sleep(nextReadTime - currentTime);
+    }
+}
@@ -0,0 +1,96 @@
+package startuphelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+
+//Holds back starting the next program while the system is short on memory or busy with IO, since starting more then only makes it worse
+//Set with a 'PressureLimit [memory %] [IO %] [min. available MB] [timeout s]' line. The percentages are compared with the share of the
+// last 10 seconds that programs were stalled on memory or IO ('some avg10' in '/proc/pressure'), and the available memory with
+// 'MemAvailable' from '/proc/meminfo'. A limit of 0 turns that check off. After 'timeout', the program is started anyway
+//Only works on Linux. Pressure stall information needs kernel 4.20 or newer; without it, only the available memory is checked
+public class PressureGate implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String PROC_PRESSURE_MEMORY = "/proc/pressure/memory", PROC_PRESSURE_IO = "/proc/pressure/io", PROC_MEMINFO = "/proc/meminfo";
+    protected static final int DEFAULT_MEMORY_LIMIT = 10, DEFAULT_IO_LIMIT = 20, DEFAULT_MIN_AVAILABLE = 0, DEFAULT_TIMEOUT = 60000;
+    //How often to check again while holding a program back, in ms
+    protected static final long CHECK_INTERVAL = 500;
+    protected static final String MEMORY = "memory", IO = "IO";
+
+    //The limits in percent, the available memory in MB and the timeout in ms
+    private final int memoryLimit, ioLimit, minAvailable, timeout;
+
+    protected PressureGate(int memoryLimit, int ioLimit, int minAvailable, int timeout) {
+        this.memoryLimit = memoryLimit;
+        this.ioLimit = ioLimit;
+        this.minAvailable = minAvailable;
+        this.timeout = timeout;
+    }
+
+    protected int getTimeout() {
+        return timeout;
+    }
+
+    //Returns whether any of the checks can be done on this system
+    protected boolean isSupported() {
+        return (memoryLimit > 0 && new File(PROC_PRESSURE_MEMORY).canRead()) || (ioLimit > 0 && new File(PROC_PRESSURE_IO).canRead())
+                || (minAvailable > 0 && new File(PROC_MEMINFO).canRead());
+    }
+
+    //Returns what the next program has to wait for: 'memory', 'IO' or 'memory/IO', or null if it can be started
+    //Anything that can't be read doesn't hold programs back
+    protected String getHoldReason() {
+        boolean isMemoryShort = false, isIoBusy = false;
+        try {
+            if (memoryLimit > 0 && new File(PROC_PRESSURE_MEMORY).canRead()) isMemoryShort = readPressure(PROC_PRESSURE_MEMORY) >= memoryLimit;
+            if (!isMemoryShort && minAvailable > 0 && new File(PROC_MEMINFO).canRead()) isMemoryShort = readAvailableMemory() < minAvailable;
+            if (ioLimit > 0 && new File(PROC_PRESSURE_IO).canRead()) isIoBusy = readPressure(PROC_PRESSURE_IO) >= ioLimit;
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while reading the memory and IO pressure: "+ioe);
+        } catch (Exception e) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Generic ERROR while reading the memory and IO pressure: "+e);
+        }
+        if (isMemoryShort && isIoBusy) return MEMORY + "/" + IO;
+        if (isMemoryShort) return MEMORY;
+        if (isIoBusy) return IO;
+        return null;
+    }
+
+    //The files look like 'some avg10=1.23 avg60=0.50 avg300=0.10 total=12345', followed by a 'full' line. Returns the 'some avg10' percentage
+    private static double readPressure(String filename) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("some ")) continue;
+                for (String field : line.split("\\s+")) {
+                    if (field.startsWith("avg10=")) return Double.parseDouble(field.substring(6));
+                }
+            }
+            return 0;
+        } finally {
+            reader.close();
+        }
+    }
+    //The line looks like 'MemAvailable:    5648900 kB'. Returns it in MB
+    private static long readAvailableMemory() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(PROC_MEMINFO));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("MemAvailable:")) return Long.parseLong(line.substring(13).trim().split("\\s+")[0]) / 1024;
+            }
+            //Kernels older than 3.14 don't have it, so don't hold anything back
+            return Long.MAX_VALUE;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PressureLimit "+memoryLimit+" "+ioLimit+" "+minAvailable+" "+(timeout / 1000);
+    }
+}
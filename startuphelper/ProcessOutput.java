@@ -0,0 +1,81 @@
+package startuphelper;
+
+import java.io.File;
+
+//What happens to the output of a started program
+//The output is handed to the operating system with a ProcessBuilder.Redirect, so a program never waits for StartupHelper to read it
+//Set with the 'output=' attribute in the program list:
+//  output=discard       Throw the output away (the default)
+//  output=inherit       Write it to StartupHelper's own console
+//  output=log:[file]    Append it to the file. Once the file is larger than 'logsize=' (in KB), it's moved to '[file].1'
+public abstract class ProcessOutput {
+    protected static final ProcessOutput DISCARD = new DiscardOutput();
+    //How large a log file can get before it's rotated, in KB, if the list doesn't say
+    protected static final int DEFAULT_LOG_SIZE = 1024;
+
+    //Returns the output handling described by 'specification', or null if it isn't a valid one. 'maxLogSize' is in bytes
+    public static ProcessOutput getInstance(String specification, long maxLogSize) {
+        String lowerCaseSpecification = specification.toLowerCase();
+        if (lowerCaseSpecification.equals("discard")) return DISCARD;
+        else if (lowerCaseSpecification.equals("inherit")) return new InheritOutput();
+        else if (lowerCaseSpecification.startsWith("log:")) {
+            String filename = specification.substring(4);
+            if (filename.length() == 0) return null;
+            return new LogOutput(new File(filename), maxLogSize);
+        }
+        return null;
+    }
+
+    //Sets up the redirects, right before the program is started
+    protected abstract void configure(ProcessBuilder processBuilder);
+}
+
+
+class DiscardOutput extends ProcessOutput {
+    @Override
+    protected void configure(ProcessBuilder processBuilder) {
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
+    }
+
+    @Override
+    public String toString() {
+        return "discard";
+    }
+}
+
+class InheritOutput extends ProcessOutput {
+    @Override
+    protected void configure(ProcessBuilder processBuilder) {
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    @Override
+    public String toString() {
+        return "inherit";
+    }
+}
+
+//Output and errors both go to one log file, opened for appending, so the program writes to it directly
+class LogOutput extends ProcessOutput {
+    private final File logFile;
+    private final long maxSize;
+
+    LogOutput(File logFile, long maxSize) {
+        this.logFile = logFile;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    protected void configure(ProcessBuilder processBuilder) {
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+        LogRotator.watch(logFile, maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return "log:" + logFile.getPath();
+    }
+}
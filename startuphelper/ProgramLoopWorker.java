@@ -1,207 +1,182 @@
 package startuphelper;
 
-import java.io.BufferedWriter;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Date;
-import java.util.LinkedList;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
-public class ProgramLoopWorker extends SwingWorker<Void, Long> {
+//Runs a LaunchEngine in the background, and shows its progress in the StartupHelper window
+public class ProgramLoopWorker extends SwingWorker<Void, Void> implements LaunchListener {
     private final StartupHelper PARENT;
-    private boolean isPaused = false, startProgram = true;
+    private final LaunchEngine engine;
     //Don't draw too often
-    private final long timeBetweenTriggers = 1000/60; //60 Frames per Second, 1/60 seconds per frame, *1000 for ms
-    private long programStartTime, pausedAt;
-    int betweenWait, currentWaitTime;
-    
+    private final int timeBetweenTriggers = 1000/60; //60 Frames per Second, 1/60 seconds per frame, *1000 for ms
+    //Redraws the progress bar on the Swing thread, at the moment the bar would move a pixel, instead of at a fixed rate
+    //It isn't started at all while the engine is paused or the window is minimized, so then nothing is drawn
+    private final Timer displayTimer;
+    //Whether a redraw for a new engine state is already waiting on the Swing thread, so they don't pile up
+    private final AtomicBoolean isStateUpdateQueued = new AtomicBoolean(false);
+    private LaunchEntry displayedEntry;
+    //What the displayed entry was being held back for, see PressureGate
+    private String displayedHoldReason;
 
-    public ProgramLoopWorker(StartupHelper parent) {
+
+    //'trace' can be null, if no timeline should be recorded
+    //If 'supervise' is true, the worker keeps restarting failed programs marked 'restart=on-failure' after the list is done
+    //'history' is where 'AutoWait' learns how long to wait after each program
+    //Changes to the list at 'programlistLocation' are merged into the run
+    public ProgramLoopWorker(StartupHelper parent, LaunchPlan plan, FileLauncher fileLauncher, StartupTrace trace, boolean supervise,
+            RunHistory history, String programlistLocation) {
         this.PARENT = parent;
+        engine = new LaunchEngine(plan, fileLauncher, this);
+        engine.setTrace(trace);
+        engine.setSupervising(supervise);
+        engine.setHistory(history);
+        engine.watchProgramlist(programlistLocation);
+        displayTimer = new Timer(timeBetweenTriggers, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateDisplay();
+            }
+        });
+        displayTimer.setRepeats(false);
     }
-    
-    protected long getProgramStartTime() {
-        return programStartTime;
+
+    //Take commands from scripts through a Unix domain socket. Call before 'execute'
+    protected void listenForControl(String socketLocation) {
+        engine.listenForControl(socketLocation);
     }
-    protected void setProgramStartTime(long time) {
-        programStartTime = time;
+    //'flightRecording' can be null, if nothing should be recorded. It's written at the end of the run
+    protected void setFlightRecording(FlightRecording flightRecording) {
+        engine.setFlightRecording(flightRecording);
     }
     protected boolean isPaused() {
-        return isPaused;
+        return engine.isPaused();
     }
+    //The display stops or starts once the engine has paused or resumed, through 'stateChanged'
     protected void setPaused(boolean isPaused) {
-        //Only act if the pause state is a change, to prevent weird behavior when pressing Pause then Quit, or vice versa
-        if (isPaused != this.isPaused) {
-            if (isPaused) {
-                //Take note of the time at which the program was paused, so the pause time can be determined
-                pausedAt = System.currentTimeMillis();
-            }
-            else {
-                //Add the time the program was paused to the time the program should be started
-                programStartTime += (System.currentTimeMillis() - pausedAt);
-            }
-            //Finally, resume the countdown thread
-            this.isPaused = isPaused;
+        engine.setPaused(isPaused);
+    }
+    //Start or skip the next program without waiting for it any longer. If the worker is paused, it stays paused
+    protected void skipWaitingForNextProgram(boolean startProgram) {
+        engine.skipWaitingForNextProgram(startProgram);
+    }
+    //Stop starting programs
+    protected void cancelRun() {
+        cancel(false);
+        displayTimer.stop();
+        engine.cancel();
+        //The window might exit right after this, so don't leave anything unwritten
+        engine.closeEventLog();
+    }
+
+    //Call when the window has been minimized or restored, so the display stops or catches up
+    protected void displayVisibilityChanged() {
+        updateDisplay();
+    }
+
+    //Redraw the progress bar with how long it is until the next program is started, and plan the next redraw
+    //This only reads the engine's latest snapshot, so drawing never waits for the engine
+    private void updateDisplay() {
+        displayTimer.stop();
+        if (!PARENT.isDisplayVisible()) return;
+        LaunchState state = engine.getState();
+        LaunchEntry nextEntry = state.getNextEntry();
+        if (nextEntry == null) return;
+        updateDisplayedEntry(nextEntry, state.getHoldReason());
+        //One step per pixel, so the bar only changes when it would look different
+        int resolution = PARENT.getProgressResolution();
+        long currentTime = System.currentTimeMillis();
+        PARENT.updateDisplay(state.getWaitLeft(currentTime, resolution), resolution);
+        //Nothing changes while paused, or while waiting for a readiness probe, until the engine has a new state
+        long nextChangeTime = state.getNextChangeTime(currentTime, resolution);
+        if (nextChangeTime == -1) return;
+        displayTimer.setInitialDelay((int) Math.min(Integer.MAX_VALUE, Math.max(timeBetweenTriggers, nextChangeTime - currentTime)));
+        displayTimer.start();
+    }
+
+    //Display the program that'll be started next, and what it's waiting for if the system is short on memory or busy with IO
+    private void updateDisplayedEntry(LaunchEntry entry, String holdReason) {
+        if (entry == null) return;
+        if (entry == displayedEntry && (holdReason == null ? displayedHoldReason == null : holdReason.equals(displayedHoldReason))) return;
+        displayedEntry = entry;
+        displayedHoldReason = holdReason;
+        String program = entry.getProgram();
+        //If the program name is too long, shorten it
+        if (program.length() > 40) {
+            program = program.substring(0, 18) + " ... "+program.substring(program.length()-18);
         }
+        if (holdReason != null) PARENT.setProgressbarString("Waiting for "+holdReason+": "+program);
+        else PARENT.setProgressbarString(program);
+    }
+
+    @Override
+    public boolean askToStart(LaunchEntry entry) {
+        return JOptionPane.showConfirmDialog(PARENT, "Do you want to start '"+entry.getProgram()+"'?", "Start program?",
+                JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == 0;
     }
-    protected void setStartProgram(boolean startProgram) {
-        this.startProgram = startProgram;
+    @Override
+    public void waitingFor(LaunchEntry entry, long timeLeft) {
+        //The display timer takes care of showing this
     }
-    
-    private void addWaitTime(long timeToAdd) {
-        programStartTime += timeToAdd;
-        currentWaitTime += timeToAdd;
-        Util.debugPrint(Util.DEBUG_BASIC, "Adding '"+timeToAdd+"' ms to the wait time. Current wait time is now "+currentWaitTime+" ms. Starting program in "+(programStartTime - System.currentTimeMillis())+" ms.");
+    @Override
+    public void entryLaunched(LaunchEntry entry, boolean started) {
+        //Nothing to show, the next entry is picked up by 'stateChanged'
     }
-     
-    
     @Override
-    protected Void doInBackground() {
-        LinkedList<String> programQueue = PARENT.getProgramQueue();
-        
-        //Fire immediately
-        long triggerTime = System.currentTimeMillis();
-        //Set the first wait until a program should be started
-        programStartTime = System.currentTimeMillis() + PARENT.getStartWait();
-        betweenWait = PARENT.getBetweenWait();
-        
-        currentWaitTime = PARENT.getStartWait();
-        
-        PARENT.setProgressbarString(programQueue.peek());
-        
-        Util.debugPrint(Util.DEBUG_DETAILED, "Current time: "+System.currentTimeMillis()+", launch program at "+programStartTime);        
-        
-        //Fix brief moment of weird misdrawing on program startup
-        PARENT.updateDisplay(100);
-        
-        //Loop through the program list until there's no programs left
-        while (programQueue.size() > 0 && !isCancelled()) {
-            //Don't redraw too often, wastes CPU power
-            if (System.currentTimeMillis() >= triggerTime) {
-                //Update the next fire time
-                triggerTime += timeBetweenTriggers;
-                
-                //Only do something if the worker isn't paused
-                if (!isPaused) {
-                    //Check if a program needs to be started
-                    if (programStartTime <= System.currentTimeMillis()) {
-                        String program = programQueue.poll();
-                        //A question mark before the program location means ask whether the program should be started
-                        if (startProgram == true && program.startsWith("?")) {
-                            //Remove the question mark
-                            program = program.substring(1);
-                            //Ask if it should be started
-                            if (JOptionPane.showConfirmDialog(PARENT, "Do you want to start '"+program+"'?", "Start program?", 
-                                    JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) != 0) startProgram = false;
-                        }
-                        //LAUNCH PROGRAM (if we should)
-                        if (startProgram) PARENT.startProgram(program);
-                        //Reset the start trigger. If the user wants to skip the next one, they'll have to press 'Skip' again
-                        startProgram = true;
-                        
-                        //Set up the next program to load, if there is any
-                        program = programQueue.peek();
-                        if (program != null) {                            
-                            //Catch any special commands
-                            boolean commandFound = true;
-                            while (commandFound) {
-                                commandFound = false;
-                                String programLowerCase = program.toLowerCase();
-                                if (programLowerCase.startsWith("wait")) {
-                                    //Add to the waiting time
-                                    addWaitTime(Util.convertStringToInt(Util.getArgumentFromLine(program), 0)*1000);
-                                    commandFound = true;
-                                }
-                                else if (programLowerCase.startsWith("betweenwait")) {
-                                    betweenWait = Util.convertStringToInt(Util.getArgumentFromLine(program), betweenWait)*1000;
-                                    commandFound = true;
-                                }
+    public void stateChanged(LaunchState state) {
+        if (!isStateUpdateQueued.compareAndSet(false, true)) return;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                isStateUpdateQueued.set(false);
+                //The engine can also be paused from the control socket
+                PARENT.updatePauseButton();
+                updateDisplay();
+            }
+        });
+    }
+
 
-                                //If a special command was given, discard it, and retrieve the next real program in line
-                                if (commandFound) {
-                                    programQueue.poll();
-                                    program = programQueue.peek();
-                                }
-                            }
-                            
-                            //Calculate the new wait time (after command check since BetweenWait could've changed)
-                            programStartTime = System.currentTimeMillis() + betweenWait;
-                            currentWaitTime = betweenWait;
-                            
-                            //If the program name is too long, shorten it
-                            if (program.length() > 40) {
-                                program = program.substring(0, 18) + " ... "+program.substring(program.length()-18);
-                            }
-                            //Display the new program to be started next                        
-                            PARENT.setProgressbarString(program);
-                        } //End 'program=null' check for end of program queue
-                    } //End of check for program start time
+    @Override
+    protected Void doInBackground() {
+        //The progress bar is redrawn on the Swing thread whenever the engine has a new state, and in between by the display timer,
+        // so the engine only has to wake up when there's something to start
+        engine.run();
 
-                    //Time left: executeTime - currentTime
-                    //Time left as percentage: timeLeft / totalTimeLeft * 100
-                    Util.debugPrint(Util.DEBUG_VERBOSE, "Current time: "+System.currentTimeMillis()+", program start time: "+programStartTime+", current wait time: "+currentWaitTime);
-                    long percentageWaitLeft = 100* (programStartTime - System.currentTimeMillis()) / currentWaitTime;
-                    publish(percentageWaitLeft);
-                } //End of pause check
-            } //End of trigger time check, to prevent firing too often
-            //If there's no need to fire yet, rest a while
-            //*
-            else {
-                try {
-                    Thread.sleep(triggerTime - System.currentTimeMillis());
-                } catch (InterruptedException ie) {
-                    Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Worker sleep method interrupted ("+ie+")");
+        displayTimer.stop();
+        if (engine.isSupervising()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    PARENT.showSupervising();
                 }
-            }
-            /**/
-        } //End queue-reader while-loop
+            });
+            engine.supervise();
+        }
         Util.debugPrint(Util.DEBUG_BASIC, "Reached end of program list, exiting.");
         return null;
     }//End of 'doInBackground'
-    
-    @Override
-    protected void process(List<Long> percentageList) {
-        //Get the current page
-        long percentage = percentageList.get(percentageList.size()-1);
-        PARENT.updateDisplay(percentage);
-    }
-    
+
     @Override
     protected void done() {
+        engine.closeEventLog();
         //Show the list of errors, if there are any
-        if (PARENT.getErrorList().size() > 0) {
+        List<String> errors = engine.getErrorList();
+        if (errors.size() > 0) {
             String message = "";
-            for (String error : PARENT.getErrorList()) {
+            for (String error : errors) {
                 message += error+"\n";
             }
-            message += "\nA log file has been created in the StartupHelper directory with the contents of this error message.";
-            
-            try {
-                //Open a file to write to
-                BufferedWriter writer = new BufferedWriter(new FileWriter("ErrorLog.txt"));
-                writer.write(new Date().toString());
-                writer.newLine();
-                //Iterate over all the lines, writing each one down
-                for (String error : PARENT.getErrorList()) {
-                    writer.write(error);
-                    writer.newLine();
-                }
-                //Make sure all the data is written to disk
-                writer.flush();
-                //Writer isn't needed anymore
-                writer.close();
-            } catch (FileNotFoundException fnfe) {
-                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while writing error log: "+fnfe);
-            } catch (IOException ioe) {
-                Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while writing error log: "+ioe);
-            }
-            
+            message += "\nThese errors are also in '"+engine.getEventLogFile().getName()+"' in the StartupHelper directory, along with the rest of what happened.";
+
             //Finally, show the errors
             JOptionPane.showMessageDialog(PARENT, message, "Errors Occured!", JOptionPane.ERROR_MESSAGE);
         }
-        if (!isCancelled()) System.exit(0);
+        if (!isCancelled()) PARENT.runFinished();
     }
 }
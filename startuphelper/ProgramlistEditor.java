@@ -3,29 +3,53 @@ package startuphelper;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.*;
-import java.util.Scanner;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
 public class ProgramlistEditor extends JFrame {
     private String programlistFileLocation;
-    private JList programlist;
-    private DefaultListModel programlistModel;
-    private JSpinner startwaitSpinner, betweenwaitSpinner;
-    private JCheckBox alwaysOnTopCheckbox;
+    private JList<String> programlist;
+    private ProgramlistModel programlistModel;
+    private JSpinner startwaitSpinner, betweenwaitSpinner, adaptiveMinSpinner, adaptiveMaxSpinner, parallelSpinner;
+    private JCheckBox alwaysOnTopCheckbox, autoWaitCheckbox, keepBackupCheckbox;
     private JButton addProgramButton, addWaitButton, addCommentButton, addEmptyLineButton;
     private JButton moveLineUpButton, moveLineDownButton, commentLineButton, editLineButton, removeLineButton;
+    private JButton undoButton, redoButton;
     private JButton helpButton, saveButton, closeButton;
     private boolean unsavedChanges = false;
+    //Counts the changes, so a save that finishes knows whether anything was changed while it was saving
+    private int changeCount = 0;
+    //The list is loaded and saved on a background thread. This is the one that's busy, or null if there isn't any
+    private SwingWorker<?, ?> fileWorker;
+    //Whether closing the Editor exits StartupHelper, which isn't the case while a run is going on in the background
+    private boolean exitOnClose;
+    private boolean isClosed = false;
     
-    private final int WINDOW_HEIGHT = 315;
+    private final int WINDOW_HEIGHT = 370;
     
     public ProgramlistEditor(String listfileLocation) {
+        this(listfileLocation, true);
+    }
+    public ProgramlistEditor(String listfileLocation, boolean exitOnClose) {
         programlistFileLocation = listfileLocation;
+        this.exitOnClose = exitOnClose;
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -38,18 +62,32 @@ public class ProgramlistEditor extends JFrame {
         setTitle("Startup Helper "+Util.VERSION+" - Editor");
         setLayout(new BorderLayout());
         //No defaultOnClose, since we need to be able to ask the user to confirm closing the window
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         addWindowListener(new WindowHandler());
         
         //Add startup value selectors to the bottom
         JPanel spinnerPanel = new JPanel();
         spinnerPanel.setLayout(new BoxLayout(spinnerPanel, BoxLayout.X_AXIS));
         SpinnerHandler spinnerHandler = new SpinnerHandler();
-        startwaitSpinner = Util.createSpinner("StartWait: ", spinnerPanel, spinnerHandler, 1, 0, 99999, 1);
-        betweenwaitSpinner = Util.createSpinner("BetweenWait: ", spinnerPanel, spinnerHandler, 1, 0, 99999, 1);
+        startwaitSpinner = GuiUtil.createSpinner("StartWait: ", spinnerPanel, spinnerHandler, 1, 0, 99999, 1);
+        betweenwaitSpinner = GuiUtil.createSpinner("BetweenWait: ", spinnerPanel, spinnerHandler, 1, 0, 99999, 1);
+        //Bounds for the load-adaptive BetweenWait. Leaving the maximum at 0 turns adaptive waiting off
+        adaptiveMinSpinner = GuiUtil.createSpinner("MinWait: ", spinnerPanel, spinnerHandler, 0, 0, 99999, 1);
+        adaptiveMaxSpinner = GuiUtil.createSpinner("MaxWait: ", spinnerPanel, spinnerHandler, 0, 0, 99999, 1);
+        //How many programs can be starting up at once. 0 means one per processor
+        parallelSpinner = GuiUtil.createSpinner("Parallel: ", spinnerPanel, spinnerHandler, 0, 0, 999, 1);
         
         alwaysOnTopCheckbox = new JCheckBox("Always On Top", false);
         alwaysOnTopCheckbox.addItemListener(new CheckboxHandler());
         spinnerPanel.add(alwaysOnTopCheckbox);
+        //Learn the wait after each program from how long it kept the computer busy on earlier runs
+        autoWaitCheckbox = new JCheckBox("Learn Waits", false);
+        autoWaitCheckbox.addItemListener(new CheckboxHandler());
+        spinnerPanel.add(autoWaitCheckbox);
+        //Keep the previous version of the list as '.bak' when saving
+        keepBackupCheckbox = new JCheckBox("Keep Backup", false);
+        keepBackupCheckbox.addItemListener(new CheckboxHandler());
+        spinnerPanel.add(keepBackupCheckbox);
         
         add(spinnerPanel, BorderLayout.SOUTH);
         
@@ -57,79 +95,46 @@ public class ProgramlistEditor extends JFrame {
         JPanel buttonPanel = new JPanel();
         buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.Y_AXIS));
         ButtonHandler buttonHandler = new ButtonHandler(this);
-        addProgramButton = Util.createButton("Add Program", buttonPanel, buttonHandler);
-        addWaitButton = Util.createButton("Add Wait", buttonPanel, buttonHandler);
-        addCommentButton = Util.createButton("Add Comment", buttonPanel, buttonHandler);
-        addEmptyLineButton = Util.createButton("Add Empty Line", buttonPanel, buttonHandler, false);        
+        addProgramButton = GuiUtil.createButton("Add Program", buttonPanel, buttonHandler);
+        addWaitButton = GuiUtil.createButton("Add Wait", buttonPanel, buttonHandler);
+        addCommentButton = GuiUtil.createButton("Add Comment", buttonPanel, buttonHandler);
+        addEmptyLineButton = GuiUtil.createButton("Add Empty Line", buttonPanel, buttonHandler, false);        
         
         buttonPanel.add(Box.createVerticalGlue());
         buttonPanel.add(new JSeparator(JSeparator.HORIZONTAL));
         buttonPanel.add(Box.createVerticalGlue());
         
-        moveLineUpButton = Util.createButton("Move Up", buttonPanel, buttonHandler, false);
-        moveLineDownButton = Util.createButton("Move Down", buttonPanel, buttonHandler, false);
+        moveLineUpButton = GuiUtil.createButton("Move Up", buttonPanel, buttonHandler, false);
+        moveLineDownButton = GuiUtil.createButton("Move Down", buttonPanel, buttonHandler, false);
         
-        commentLineButton = Util.createButton("Comment Line", buttonPanel, buttonHandler, false);
-        editLineButton = Util.createButton("Edit Line", buttonPanel, buttonHandler, false);
-        removeLineButton = Util.createButton("Remove Line", buttonPanel, buttonHandler, false);
+        commentLineButton = GuiUtil.createButton("Comment Line", buttonPanel, buttonHandler, false);
+        editLineButton = GuiUtil.createButton("Edit Line", buttonPanel, buttonHandler, false);
+        removeLineButton = GuiUtil.createButton("Remove Line", buttonPanel, buttonHandler, false);
+        undoButton = GuiUtil.createButton("Undo", buttonPanel, buttonHandler, false);
+        redoButton = GuiUtil.createButton("Redo", buttonPanel, buttonHandler, false);
         
-        helpButton = Util.createButton("Help", buttonPanel, buttonHandler);
-        saveButton = Util.createButton("Save List", buttonPanel, buttonHandler, false);
-        closeButton = Util.createButton("Close Editor", buttonPanel, buttonHandler);
+        helpButton = GuiUtil.createButton("Help", buttonPanel, buttonHandler);
+        saveButton = GuiUtil.createButton("Save List", buttonPanel, buttonHandler, false);
+        closeButton = GuiUtil.createButton("Close Editor", buttonPanel, buttonHandler);
         
         buttonPanel.setPreferredSize(new Dimension(140, WINDOW_HEIGHT));
         add(buttonPanel, BorderLayout.EAST);
         
-        programlistModel = new DefaultListModel();
-        File programlistFile = new File(Util.DEFAULT_PROGRAMLIST_LOCATION);
-        if (programlistFile.exists()) {
-            //Load in the combined program list/settings file
-            try {
-                boolean betweenwaitIsSet = false;
-                Scanner scanner = new Scanner(programlistFile);
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    String lineLowerCase = line.toLowerCase();
-                    
-                    Util.debugPrint(Util.DEBUG_VERBOSE, "LINE: " + line);
-
-                    //Get the initial values, to set the spinners correctly. Don't add them to the list
-                    if (lineLowerCase.startsWith("startwait")) {
-                        startwaitSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line), 1));
-                    }
-                    else if (lineLowerCase.startsWith("betweenwait") && betweenwaitIsSet == false) {
-                        betweenwaitSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line), 1));
-                        betweenwaitIsSet = true;
-                    }
-                    else if (lineLowerCase.replaceAll(" ", "").equals("alwaysontop")) {
-                        alwaysOnTopCheckbox.setSelected(true);
-                        unsavedChanges(false);
-                    }
-                    //If it's not one of the initial settings, add it to the programlist editor as normal
-                    else {
-                        if (line.length() == 0) line = " ";
-
-                        programlistModel.addElement(line);
-                    }
-                }
-                scanner.close();
-                
-                //Remove any empty lines at the top
-                while (programlistModel.get(0).equals(" ") && programlistModel.size() >= 1) {
-                    programlistModel.remove(0);
-                }
-            } catch (FileNotFoundException fnfe) {
-                Util.debugPrint(Util.DEBUG_ALWAYS, "Program list not found! (" + fnfe + ")");
-            } catch (IOException ioe) {
-                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while reading the program list: " + ioe);
-            }
-        }
-        programlist = new JList(programlistModel);
+        programlistModel = new ProgramlistModel();
+        programlist = new JList<String>(programlistModel);
         
         programlist.setLayoutOrientation(JList.VERTICAL);
-        //Make sure only one item can be selected at a time
-        programlist.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        //Several lines can be moved, commented or removed at once
+        programlist.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         programlist.addListSelectionListener(new ListHandler());
+        //Every line has the size of the longest one, so the list doesn't have to measure every line to lay itself out
+        programlist.setPrototypeCellValue(" ");
+        programlistModel.addListDataListener(new ModelHandler());
+        //Undo, redo and remove work from the keyboard too
+        addKeyBinding(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), undoButton);
+        addKeyBinding(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), redoButton);
+        addKeyBinding(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), redoButton);
+        addKeyBinding(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0), removeLineButton);
 
         //Make sure long lists can be shown too without going off-screen
         JScrollPane programlistScroller = new JScrollPane(programlist, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
@@ -144,16 +149,95 @@ public class ProgramlistEditor extends JFrame {
         setVisible(true);
         //Center window on screen
         setLocationRelativeTo(null);
+        //Long lists take a while to read, so the window is shown first and filled in once the list is read
+        if (new File(programlistFileLocation).exists()) {
+            toggleButtonState(false, addProgramButton, addWaitButton, addCommentButton);
+            setStatus("Loading...");
+            fileWorker = new LoadWorker();
+            fileWorker.execute();
+        }
         //If the program list didn't exist before, inform the user and fill the file with some starting information
-        if (programlistModel.isEmpty()) {
-            showHelp(true);
+        else showHelp(true);
+    }
+
+    //Shows what the Editor is busy with in the title, or nothing if 'status' is null
+    private void setStatus(String status) {
+        if (status == null) setTitle("Startup Helper "+Util.VERSION+" - Editor");
+        else setTitle("Startup Helper "+Util.VERSION+" - Editor ("+status+")");
+    }
+
+    //Fills in the Editor with the lines of the program list
+    private void showProgramlist(List<String> fileLines) {
+        //Collect the lines first and hand them to the model at once, so a long list doesn't fire an event per line
+        List<String> lines = new ArrayList<String>();
+        boolean betweenwaitIsSet = false;
+        for (String line : fileLines) {
+            String lineLowerCase = line.toLowerCase();
+            
+            Util.debugPrint(Util.DEBUG_VERBOSE, "LINE: " + line);
+
+            //Get the initial values, to set the spinners correctly. Don't add them to the list
+            if (lineLowerCase.startsWith("startwait")) {
+                startwaitSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line), 1));
+            }
+            else if (lineLowerCase.startsWith("betweenwait") && betweenwaitIsSet == false) {
+                betweenwaitSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line), 1));
+                betweenwaitIsSet = true;
+            }
+            else if (lineLowerCase.startsWith("adaptivewait")) {
+                adaptiveMinSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line, 1), 0));
+                adaptiveMaxSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line, 2), 0));
+            }
+            else if (lineLowerCase.startsWith("parallel")) {
+                parallelSpinner.setValue(Util.convertStringToInt(Util.getArgumentFromLine(line), 0));
+            }
+            else if (lineLowerCase.replaceAll(" ", "").equals("alwaysontop")) {
+                alwaysOnTopCheckbox.setSelected(true);
+            }
+            else if (lineLowerCase.trim().equals("autowait")) {
+                autoWaitCheckbox.setSelected(true);
+            }
+            else if (lineLowerCase.trim().equals("keepbackup")) {
+                keepBackupCheckbox.setSelected(true);
+            }
+            //If it's not one of the initial settings, add it to the programlist editor as normal
+            else {
+                if (line.length() == 0) line = " ";
+
+                //Skip any empty lines at the top
+                if (!line.equals(" ") || lines.size() > 0) lines.add(line);
+            }
         }
-        //else unsavedChanges(false);
+        programlistModel.setLines(lines);
+        programlist.setPrototypeCellValue(getLongestLine(0, programlistModel.getSize() - 1, " "));
+        //Filling in the settings isn't a change
+        unsavedChanges(false);
     }
     
+    //Pressing the key clicks the button, if it's enabled
+    private void addKeyBinding(KeyStroke keyStroke, final JButton button) {
+        String actionName = "press " + button.getText();
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(keyStroke, actionName);
+        getRootPane().getActionMap().put(actionName, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (button.isEnabled()) button.doClick();
+            }
+        });
+    }
+
+    //Returns the longest line from 'first' to 'last', or 'longestLine' if that's longer
+    private String getLongestLine(int first, int last, String longestLine) {
+        for (int i = first; i <= last; i++) {
+            String line = programlistModel.getElementAt(i);
+            if (line.length() > longestLine.length()) longestLine = line;
+        }
+        return longestLine;
+    }
+
     //A method to determine at which index a new line should be inserted into the program list
     private int getInsertIndex() {
-        int selectedIndex = programlist.getSelectedIndex();
+        int selectedIndex = programlist.getMaxSelectionIndex();
         //If no entry has been selected, add the program at the end
         if (selectedIndex == -1) return programlistModel.getSize();
         //Otherwise, return the place after the currently selected one
@@ -161,10 +245,9 @@ public class ProgramlistEditor extends JFrame {
     }
     private void addLineToProgramlist(String line, int insertIndex) {
         //Add the program to the list, and make sure it's visible and selected
-        programlistModel.add(insertIndex, line);
+        programlistModel.insert(insertIndex, line);
         programlist.ensureIndexIsVisible(insertIndex);
         programlist.setSelectedIndex(insertIndex);
-        unsavedChanges(true);
     }
     private void addLineToProgramlist(String line) {
         addLineToProgramlist(line, getInsertIndex());
@@ -172,50 +255,53 @@ public class ProgramlistEditor extends JFrame {
     
     private void unsavedChanges(boolean unsavedChanges) {
         this.unsavedChanges = unsavedChanges;
-        saveButton.setEnabled(unsavedChanges);
+        if (unsavedChanges) {
+            changeCount++;
+            //Don't keep saying 'Saved'
+            if (fileWorker == null) setStatus(null);
+        }
+        //Saving twice at once makes no sense
+        saveButton.setEnabled(unsavedChanges && !(fileWorker instanceof SaveWorker));
     }
     
-    private void saveProgramlist() {
-        try {
-            //Open a file to write to
-            BufferedWriter writer = new BufferedWriter(new FileWriter(Util.DEFAULT_PROGRAMLIST_LOCATION));
-            
-            //Write the initial settings first
-            writer.write("startWait " + startwaitSpinner.getValue());
-            writer.newLine();
-            writer.write("betweenWait " + betweenwaitSpinner.getValue());
-            writer.newLine();
-            if (alwaysOnTopCheckbox.isSelected()) {
-                writer.write("AlwaysOnTop");
-                writer.newLine();
-            }
-            writer.newLine();
-            
-            //Iterate over all the lines, writing each one down
-            for (int i = 0; i < programlistModel.getSize(); i++) {
-                //Make sure no errant spaces are left in, that were put there so they're displayed in the list
-                String line = programlistModel.get(i).toString();
-                
-                if (line.equals(" ")) line = "";
+    //Returns the lines the program list file should have, with the settings from the spinners and checkboxes first
+    private List<String> getProgramlistLines() {
+        List<String> lines = new ArrayList<String>(programlistModel.getSize() + 10);
+        lines.add("startWait " + startwaitSpinner.getValue());
+        lines.add("betweenWait " + betweenwaitSpinner.getValue());
+        //Only write the adaptive wait bounds if adaptive waiting is turned on
+        if ((Integer) adaptiveMaxSpinner.getValue() > 0) {
+            lines.add("adaptiveWait " + adaptiveMinSpinner.getValue() + " " + adaptiveMaxSpinner.getValue());
+        }
+        if ((Integer) parallelSpinner.getValue() > 0) lines.add("parallel " + parallelSpinner.getValue());
+        if (alwaysOnTopCheckbox.isSelected()) lines.add("AlwaysOnTop");
+        if (autoWaitCheckbox.isSelected()) lines.add("AutoWait");
+        if (keepBackupCheckbox.isSelected()) lines.add("KeepBackup");
+        lines.add("");
+        
+        for (int i = 0; i < programlistModel.getSize(); i++) {
+            //Make sure no errant spaces are left in, that were put there so they're displayed in the list
+            String line = programlistModel.getElementAt(i);
+            if (line.equals(" ")) line = "";
+            lines.add(line);
+        }
+        return lines;
+    }
 
-                writer.write(line);
-                writer.newLine();
+    //Saves the list on a background thread. If 'closeAfterwards' is true, the Editor closes once it's saved
+    private void saveProgramlist(boolean closeAfterwards) {
+        if (fileWorker != null) return;
+        final SaveWorker saveWorker = new SaveWorker(getProgramlistLines(), keepBackupCheckbox.isSelected(), closeAfterwards);
+        fileWorker = saveWorker;
+        saveButton.setEnabled(false);
+        setStatus("Saving...");
+        saveWorker.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                if (e.getPropertyName().equals("progress") && fileWorker == saveWorker) setStatus("Saving... "+e.getNewValue()+"%");
             }
-            //Make sure all the data is written to disk
-            writer.flush();
-            //Writer isn't needed anymore
-            writer.close();
-            
-            unsavedChanges(false);
-            
-            JOptionPane.showMessageDialog(this, "The program list was saved successfully!", "Save Successful!", JOptionPane.INFORMATION_MESSAGE);
-        } catch (FileNotFoundException fnfe) {
-            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while writing program list: "+fnfe);
-        } catch (IOException ioe) {
-            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while writing program list: "+ioe);
-        } catch (Exception e) {
-            Util.debugPrint(Util.DEBUG_ALWAYS, "Generic ERROR while writing program list: "+e);
-        }
+        });
+        saveWorker.execute();
     }
     
     private void showHelp(boolean firstStartup) {
@@ -232,23 +318,45 @@ public class ProgramlistEditor extends JFrame {
         JOptionPane.showMessageDialog(this, message, "Startup Helper Help", JOptionPane.INFORMATION_MESSAGE);
     }
     
+    private void showError(String message, String title) {
+        JOptionPane.showMessageDialog(this, message, title, JOptionPane.ERROR_MESSAGE);
+    }
+    
     private void toggleButtonState(boolean setEnabled, JButton... buttons) {
         for (JButton button : buttons) {
             button.setEnabled(setEnabled);
         }
     }
     
+    protected void setExitOnClose(boolean exitOnClose) {
+        this.exitOnClose = exitOnClose;
+    }
+    protected boolean isClosed() {
+        return isClosed;
+    }
+    private void closeEditor() {
+        isClosed = true;
+        if (exitOnClose) System.exit(0);
+        else dispose();
+    }
+
     private void closeWindow() {
+        //If the list is still being saved, close once that's done
+        if (fileWorker instanceof SaveWorker) {
+            ((SaveWorker) fileWorker).closeAfterwards = true;
+            return;
+        }
         //If there are any changes to the program list that haven't been saved yet, ask if they should
         if (unsavedChanges) {
             int choice = JOptionPane.showConfirmDialog(this, "Some changes to the program list aren't saved.\nDo you want to save changes before exiting?", "Unsaved Changes", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
-            if (choice == JOptionPane.OK_OPTION) saveProgramlist();
-            if (choice != JOptionPane.CANCEL_OPTION) System.exit(0);
+            //The Editor closes once the list is saved, or stays open if saving fails
+            if (choice == JOptionPane.OK_OPTION) saveProgramlist(true);
+            else if (choice != JOptionPane.CANCEL_OPTION) closeEditor();
         }
         else {
             if (JOptionPane.showConfirmDialog(this, "Are you sure you want to close the Editor?",
                     "Close Confirmation", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION) {
-                System.exit(0);
+                closeEditor();
             }
         }        
     }
@@ -312,38 +420,23 @@ public class ProgramlistEditor extends JFrame {
             
             //'Move Up' and 'Move Down' are so similar in function, they can share an 'else if'
             else if (e.getSource() == moveLineUpButton || e.getSource() == moveLineDownButton) {
-                int selectedIndex = programlist.getSelectedIndex();
-                int otherIndex;
-                if (e.getSource() == moveLineUpButton) otherIndex = selectedIndex - 1;
-                else otherIndex = selectedIndex + 1;
-                
-                //Retrieve the top line
-                String selectedLine = (String) programlistModel.get(selectedIndex);
-                //Replace the second line with the first. This gives us the original second line
-                String otherLine = (String) programlistModel.set(otherIndex, selectedLine);
-                //Replace the first line with the second
-                programlistModel.set(selectedIndex, otherLine);                
-                
-                //Select the originally selected line
-                programlist.setSelectedIndex(otherIndex);                
-                unsavedChanges(true);
+                int direction = e.getSource() == moveLineUpButton ? -1 : 1;
+                int[] selectedIndices = programlist.getSelectedIndices();
+                if (programlistModel.move(selectedIndices, direction)) {
+                    //Keep the moved lines selected
+                    for (int i = 0; i < selectedIndices.length; i++) selectedIndices[i] += direction;
+                    programlist.setSelectedIndices(selectedIndices);
+                    programlist.ensureIndexIsVisible(direction < 0 ? selectedIndices[0] : selectedIndices[selectedIndices.length - 1]);
+                }
             }
             
             else if (e.getSource() == commentLineButton) {
-                String line = (String) programlist.getSelectedValue();
-                //If there's already a comment sign, remove it, otherwise add it
+                //If all selected lines are comments, uncomment them, otherwise comment the ones that aren't
+                boolean isComment = programlistModel.toggleComment(programlist.getSelectedIndices());
                 //Update the button's text to reflect the new situation in the process
-                if (line.startsWith("#")) {
-                    line = line.substring(1);
-                    commentLineButton.setText("Comment Line");
+                if (programlist.getMinSelectionIndex() == programlist.getMaxSelectionIndex()) {
+                    commentLineButton.setText(isComment ? "Uncomment Line" : "Comment Line");
                 }
-                else {
-                    line = "#"+line;
-                    commentLineButton.setText("Uncomment Line");
-                }                
-                
-                programlistModel.set(programlist.getSelectedIndex(), line);                
-                unsavedChanges(true);
             }
             else if (e.getSource() == editLineButton) {
                 //Three possible cases: Comment line, command or program
@@ -362,11 +455,24 @@ public class ProgramlistEditor extends JFrame {
                             JOptionPane.PLAIN_MESSAGE, null, null, Util.getArgumentFromLine(line));
                     if (time != null) lineNew = line.split(" ")[0] + " " + time;
                 }
+                //Resource class, cgroup, prefetch, idle and pressure lines have too many settings for a dialog of their own, so just edit the text
+                else if (lineLowerCase.startsWith("class ") || lineLowerCase.startsWith("cgroup ") || lineLowerCase.startsWith("prefetch ")
+                        || lineLowerCase.startsWith("idlethreshold ") || lineLowerCase.startsWith("pressurelimit")) {
+                    String input = (String) JOptionPane.showInputDialog(PARENT, "Make the desired changes to this line here.",
+                            "Line Change", JOptionPane.PLAIN_MESSAGE, null, null, line);
+                    if (input != null) lineNew = input;
+                }
                 //If it's neither a comment nor a command, it's a program (empty lines are ignored)
                 else {
+                    //Keep any attributes after the '|' (like 'name=' and 'after='), only the program itself is picked again
+                    String program = line, attributes = "";
+                    if (line.contains("|")) {
+                        program = line.substring(0, line.indexOf("|")).trim();
+                        attributes = " " + line.substring(line.indexOf("|"));
+                    }
                     File lineFile;
-                    if (line.startsWith("?")) lineFile = new File(line.substring(1));
-                    else lineFile = new File(line);                    
+                    if (program.startsWith("?")) lineFile = new File(program.substring(1));
+                    else lineFile = new File(program);                    
                     //Show a standard file chooser so the user can pick the program they want
                     JFileChooser filechooser = new JFileChooser(lineFile);
                     filechooser.setSelectedFile(lineFile);
@@ -381,6 +487,7 @@ public class ProgramlistEditor extends JFrame {
                                 "Ask On Startup?", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION) {
                             lineNew = "?"+lineNew;
                         }
+                        lineNew += attributes;
                     }
                 }//End 'edit program'-if
                 
@@ -389,38 +496,48 @@ public class ProgramlistEditor extends JFrame {
                     Util.debugPrint(Util.DEBUG_BASIC, "Old line: "+line);
                     Util.debugPrint(Util.DEBUG_BASIC, "New line: "+lineNew);
                     programlistModel.set(programlist.getSelectedIndex(), lineNew);
-                    unsavedChanges(true);
                 }
             }
             else if (e.getSource() == removeLineButton) {
                 //First check if a line is selected
-                int selectedIndex = programlist.getSelectedIndex();
-                if (selectedIndex != -1) {
-                    boolean removeLine = false;
-                    //If it's just an empty line, just remove the line
-                    if (programlist.getSelectedValue().toString().length() < 3) removeLine = true;
-                    //Otherwise, ask for confirmation
-                    else if (JOptionPane.showConfirmDialog(PARENT, "Are you sure you want to delete the selected line?",
-                            "Confirm Removal", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-                        removeLine = true;
+                int[] selectedIndices = programlist.getSelectedIndices();
+                if (selectedIndices.length > 0) {
+                    boolean removeLine = true;
+                    //If they're just empty lines, just remove them. Otherwise, ask for confirmation once for all of them
+                    for (int selectedIndex : selectedIndices) {
+                        if (programlistModel.getElementAt(selectedIndex).length() >= 3) {
+                            removeLine = false;
+                            break;
+                        }
+                    }
+                    if (!removeLine) {
+                        String question = selectedIndices.length == 1 ? "Are you sure you want to delete the selected line?"
+                                : "Are you sure you want to delete the "+selectedIndices.length+" selected lines?";
+                        removeLine = JOptionPane.showConfirmDialog(PARENT, question, "Confirm Removal", JOptionPane.YES_NO_OPTION,
+                                JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION;
                     }
                     
                     if (removeLine) {
-                        programlistModel.remove(selectedIndex);
-                        //Select the entry just before the one that was just deleted, if it wasn't the first one
-                        programlist.setSelectedIndex(Math.max(selectedIndex - 1, 0));
-                        unsavedChanges(true);
+                        programlistModel.remove(selectedIndices);
+                        //Select the entry just before the first one that was just deleted, if it wasn't the first one
+                        if (!programlistModel.isEmpty()) programlist.setSelectedIndex(Math.max(selectedIndices[0] - 1, 0));
                     }
                 }
             }
+            else if (e.getSource() == undoButton) programlistModel.undo();
+            else if (e.getSource() == redoButton) programlistModel.redo();
             
             else if (e.getSource() == helpButton) showHelp(false);
             else if (e.getSource() == saveButton) {
-                saveProgramlist();
+                saveProgramlist(false);
             }
             else if (e.getSource() == closeButton) {
                 closeWindow();
             }//end of 'closeButton' if
+            
+            //Whatever was done, it might have changed what can be undone
+            undoButton.setEnabled(programlistModel.canUndo());
+            redoButton.setEnabled(programlistModel.canRedo());
         } //End of 'actionPerformed' function
     } //End of 'ButtonHandler' class
     
@@ -434,6 +551,14 @@ public class ProgramlistEditor extends JFrame {
                 if (programlist.getSelectedIndex() == -1) {
                     toggleButtonState(false, moveLineUpButton, moveLineDownButton, commentLineButton, editLineButton, removeLineButton, addEmptyLineButton);
                 }
+                //With several lines selected, they can be moved, commented and removed together, but not edited
+                else if (programlist.getMinSelectionIndex() != programlist.getMaxSelectionIndex()) {
+                    toggleButtonState(true, removeLineButton, commentLineButton, addEmptyLineButton);
+                    editLineButton.setEnabled(false);
+                    moveLineUpButton.setEnabled(programlist.getMinSelectionIndex() > 0);
+                    moveLineDownButton.setEnabled(programlist.getMaxSelectionIndex() < programlistModel.getSize() - 1);
+                    commentLineButton.setText("Comment Lines");
+                }
                 //Otherwise, if there's nothing special going on, enable all buttons
                 else {
                     String selectedValue = programlist.getSelectedValue().toString().toLowerCase();
@@ -457,7 +582,7 @@ public class ProgramlistEditor extends JFrame {
                     else commentLineButton.setText("Comment Line");
                     
                     //Don't allow adding an empty line below the last entry
-                    if (selectedIndex == programlistModel.size()-1) {
+                    if (selectedIndex == programlistModel.getSize()-1) {
                         //addEmptyLineButton.setEnabled(false);
                         toggleButtonState(false, moveLineDownButton, addEmptyLineButton);
                     }
@@ -474,6 +599,29 @@ public class ProgramlistEditor extends JFrame {
         }//End of 'ValueChanged' method
     }//End of ListHandler class
     
+    //Any change to the lines can be saved. Also keep the list wide enough for the longest line
+    private class ModelHandler implements ListDataListener {
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            linesChanged(e);
+        }
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            linesChanged(e);
+        }
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            linesChanged(e);
+        }
+        private void linesChanged(ListDataEvent e) {
+            unsavedChanges(true);
+            if (e.getType() != ListDataEvent.INTERVAL_REMOVED) {
+                String longestLine = getLongestLine(e.getIndex0(), e.getIndex1(), programlist.getPrototypeCellValue());
+                if (longestLine != programlist.getPrototypeCellValue()) programlist.setPrototypeCellValue(longestLine);
+            }
+        }
+    }
+
     //When the user changes the wait times, enable the 'save' button
     private class SpinnerHandler implements ChangeListener {
         @Override
@@ -490,6 +638,128 @@ public class ProgramlistEditor extends JFrame {
         }        
     }
     
+    //Reads the program list file on a background thread, and then fills in the Editor
+    private class LoadWorker extends SwingWorker<List<String>, Void> {
+        @Override
+        protected List<String> doInBackground() throws IOException {
+            List<String> lines = new ArrayList<String>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(programlistFileLocation), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) lines.add(line);
+            } finally {
+                reader.close();
+            }
+            return lines;
+        }
+
+        @Override
+        protected void done() {
+            fileWorker = null;
+            setStatus(null);
+            toggleButtonState(true, addProgramButton, addWaitButton, addCommentButton);
+            try {
+                showProgramlist(get());
+            } catch (InterruptedException ie) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Interrupted while reading the program list ("+ie+")");
+            } catch (ExecutionException ee) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while reading the program list: " + ee.getCause());
+                showError("The program list couldn't be read:\n"+ee.getCause(), "Loading Failed");
+            }
+            if (programlistModel.isEmpty()) showHelp(true);
+        }
+    }
+
+    //Writes the program list on a background thread, so that a crash or power loss halfway through never leaves a broken list:
+    // the lines go to a temporary file next to it, which is synced to the disk, and only then renamed over the old list in one step
+    private class SaveWorker extends SwingWorker<Void, Void> {
+        private final List<String> lines;
+        private final boolean keepBackup;
+        //Can be set while saving, by trying to close the Editor. Only used on the Swing thread
+        private boolean closeAfterwards;
+        private final int savedChangeCount = changeCount;
+
+        private SaveWorker(List<String> lines, boolean keepBackup, boolean closeAfterwards) {
+            this.lines = lines;
+            this.keepBackup = keepBackup;
+            this.closeAfterwards = closeAfterwards;
+        }
+
+        @Override
+        protected Void doInBackground() throws IOException {
+            File programlistFile = new File(programlistFileLocation);
+            File directory = programlistFile.getAbsoluteFile().getParentFile();
+            File tempFile = File.createTempFile(programlistFile.getName() + ".", ".tmp", directory);
+            try {
+                FileOutputStream stream = new FileOutputStream(tempFile);
+                try {
+                    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                    for (int i = 0; i < lines.size(); i++) {
+                        writer.write(lines.get(i));
+                        writer.newLine();
+                        if (i % 1000 == 0) setProgress(90 * i / lines.size());
+                    }
+                    writer.flush();
+                    //Make sure all the data is on the disk before it replaces the old list
+                    stream.getFD().sync();
+                } finally {
+                    stream.close();
+                }
+                if (keepBackup && programlistFile.exists()) {
+                    Files.copy(programlistFile.toPath(), new File(programlistFile.getPath() + ".bak").toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                try {
+                    Files.move(tempFile.toPath(), programlistFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException amnse) {
+                    Util.debugPrint(Util.DEBUG_BASIC, "The program list can't be replaced in one step here, replacing it normally.");
+                    Files.move(tempFile.toPath(), programlistFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                setProgress(95);
+                syncDirectory(directory);
+                setProgress(100);
+            } finally {
+                //Only still there if something went wrong
+                tempFile.delete();
+            }
+            return null;
+        }
+
+        //Makes sure the rename itself is on the disk. Directories can't be opened like this on every system, which is fine there
+        private void syncDirectory(File directory) {
+            try {
+                FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+                try {
+                    channel.force(true);
+                } finally {
+                    channel.close();
+                }
+            } catch (IOException ioe) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "Can't sync directory '"+directory+"' ("+ioe+")");
+            }
+        }
+
+        @Override
+        protected void done() {
+            fileWorker = null;
+            setStatus(null);
+            try {
+                get();
+                Util.debugPrint(Util.DEBUG_BASIC, "Saved the program list ("+lines.size()+" lines).");
+                setStatus("Saved");
+                if (closeAfterwards) closeEditor();
+                //Only count the list as saved if nothing was changed while saving
+                unsavedChanges(changeCount != savedChangeCount);
+            } catch (InterruptedException ie) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Interrupted while writing program list ("+ie+")");
+                unsavedChanges(true);
+            } catch (ExecutionException ee) {
+                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while writing program list: "+ee.getCause());
+                unsavedChanges(true);
+                showError("The program list couldn't be saved, the old one was left as it was:\n"+ee.getCause(), "Saving Failed");
+            }
+        }
+    }
+
     private class WindowHandler extends WindowAdapter {
         @Override
         public void windowClosing(WindowEvent e) {
@@ -0,0 +1,183 @@
+package startuphelper;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.AbstractListModel;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+//The lines of the program list in the Editor, kept in one array without any per-line objects besides the strings themselves
+//Every change is a 'replace' of a range of lines, which fires events for just the lines that changed and can be undone
+//Changes to several lines at once (moving, removing or commenting a selection) are one event range and one undo step,
+// so lists with tens of thousands of lines don't make the Editor stall
+public class ProgramlistModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+    //How many undo steps are kept
+    private static final int UNDO_LIMIT = 1000;
+
+    private String[] lines = new String[64];
+    private int size = 0;
+    private final UndoManager undoManager = new UndoManager();
+
+    public ProgramlistModel() {
+        undoManager.setLimit(UNDO_LIMIT);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+    @Override
+    public String getElementAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Line "+index+" of "+size);
+        return lines[index];
+    }
+    protected boolean isEmpty() {
+        return size == 0;
+    }
+
+    //Replaces all lines, without an undo step, for loading a list
+    protected void setLines(List<String> newLines) {
+        int oldSize = size;
+        lines = newLines.toArray(new String[Math.max(64, newLines.size())]);
+        size = newLines.size();
+        undoManager.discardAllEdits();
+        if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+        if (size > 0) fireIntervalAdded(this, 0, size - 1);
+    }
+
+    protected void insert(int index, String line) {
+        addEdit(replace(index, 0, new String[] {line}));
+    }
+    protected void set(int index, String line) {
+        addEdit(replace(index, 1, new String[] {line}));
+    }
+
+    //Removes the lines at 'indices', which have to be sorted from low to high
+    //The range from the first to the last one is replaced by the lines in between that stay, so it's one change however many there are
+    protected void remove(int[] indices) {
+        if (indices.length == 0) return;
+        int rangeStart = indices[0], rangeEnd = indices[indices.length - 1];
+        String[] keptLines = new String[rangeEnd - rangeStart + 1 - indices.length];
+        int keptCount = 0, nextRemoved = 0;
+        for (int i = rangeStart; i <= rangeEnd; i++) {
+            if (indices[nextRemoved] == i) nextRemoved++;
+            else keptLines[keptCount++] = lines[i];
+        }
+        addEdit(replace(rangeStart, rangeEnd - rangeStart + 1, keptLines));
+    }
+
+    //Moves the lines at 'indices' (sorted from low to high) one place up (-1) or down (1), with the line in the way moving past them
+    //Returns false if that's not possible because a line is already at the top or bottom
+    protected boolean move(int[] indices, int direction) {
+        if (indices.length == 0) return false;
+        int first = indices[0], last = indices[indices.length - 1];
+        if (first + direction < 0 || last + direction >= size) return false;
+        //Only the range from the first to the last selected line (plus the one they move past) changes
+        int rangeStart = Math.min(first, first + direction), rangeEnd = Math.max(last, last + direction);
+        String[] range = Arrays.copyOfRange(lines, rangeStart, rangeEnd + 1);
+        if (direction < 0) {
+            for (int index : indices) swap(range, index - rangeStart, index - rangeStart - 1);
+        }
+        else {
+            for (int i = indices.length - 1; i >= 0; i--) swap(range, indices[i] - rangeStart, indices[i] - rangeStart + 1);
+        }
+        addEdit(replace(rangeStart, range.length, range));
+        return true;
+    }
+    private static void swap(String[] array, int index1, int index2) {
+        String swap = array[index1];
+        array[index1] = array[index2];
+        array[index2] = swap;
+    }
+
+    //Comments out the lines at 'indices' (sorted from low to high), or uncomments them if they're all comments already
+    //Empty lines are left alone. Returns whether the lines are now comments
+    protected boolean toggleComment(int[] indices) {
+        if (indices.length == 0) return false;
+        boolean allComments = true;
+        for (int index : indices) {
+            if (!isEmptyLine(lines[index]) && !lines[index].startsWith("#")) allComments = false;
+        }
+        int rangeStart = indices[0];
+        String[] range = Arrays.copyOfRange(lines, rangeStart, indices[indices.length - 1] + 1);
+        for (int index : indices) {
+            String line = range[index - rangeStart];
+            if (isEmptyLine(line)) continue;
+            if (allComments) range[index - rangeStart] = line.substring(1);
+            else if (!line.startsWith("#")) range[index - rangeStart] = "#" + line;
+        }
+        addEdit(replace(rangeStart, range.length, range));
+        return !allComments;
+    }
+    //Empty lines are shown as a single space, so the list doesn't squash them
+    protected static boolean isEmptyLine(String line) {
+        return line.trim().length() == 0;
+    }
+
+    protected boolean canUndo() {
+        return undoManager.canUndo();
+    }
+    protected boolean canRedo() {
+        return undoManager.canRedo();
+    }
+    protected void undo() {
+        if (undoManager.canUndo()) undoManager.undo();
+    }
+    protected void redo() {
+        if (undoManager.canRedo()) undoManager.redo();
+    }
+
+    private void addEdit(UndoableEdit edit) {
+        if (edit != null) undoManager.addEdit(edit);
+    }
+
+    //Replaces 'removeCount' lines from 'index' on with 'newLines', and fires events for only that range
+    //Returns the edit that undoes this, or null if nothing changed
+    private LineEdit replace(int index, int removeCount, String[] newLines) {
+        if (index < 0 || index + removeCount > size) throw new IndexOutOfBoundsException("Lines "+index+"-"+(index + removeCount)+" of "+size);
+        if (removeCount == 0 && newLines.length == 0) return null;
+        String[] oldLines = Arrays.copyOfRange(lines, index, index + removeCount);
+        int sizeChange = newLines.length - removeCount;
+        if (size + sizeChange > lines.length) lines = Arrays.copyOf(lines, Math.max(size + sizeChange, lines.length * 2));
+        System.arraycopy(lines, index + removeCount, lines, index + newLines.length, size - index - removeCount);
+        System.arraycopy(newLines, 0, lines, index, newLines.length);
+        //Don't keep removed lines around at the end
+        if (sizeChange < 0) Arrays.fill(lines, size + sizeChange, size, null);
+        size += sizeChange;
+
+        int changedCount = Math.min(removeCount, newLines.length);
+        if (changedCount > 0) fireContentsChanged(this, index, index + changedCount - 1);
+        if (sizeChange > 0) fireIntervalAdded(this, index + changedCount, index + newLines.length - 1);
+        else if (sizeChange < 0) fireIntervalRemoved(this, index + changedCount, index + removeCount - 1);
+        return new LineEdit(index, oldLines, newLines);
+    }
+
+
+    //Undoes or redoes one 'replace'
+    private class LineEdit extends AbstractUndoableEdit {
+        private static final long serialVersionUID = 1L;
+        private final int index;
+        private final String[] oldLines, newLines;
+
+        private LineEdit(int index, String[] oldLines, String[] newLines) {
+            this.index = index;
+            this.oldLines = oldLines;
+            this.newLines = newLines;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            replace(index, newLines.length, oldLines);
+        }
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            replace(index, oldLines.length, newLines);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package startuphelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//Turns the program list into a LaunchPlan, so nothing has to be parsed while programs are being started
+//Problems are reported per line in the plan's diagnostics instead of being printed and forgotten
+//The parsed plan is cached next to the program list, and reused as long as the list doesn't change
+public abstract class ProgramlistParser {
+    //Change this whenever the plan classes or the parsing rules change, so old caches are ignored
+    private static final int CACHE_VERSION = 10;
+    protected static final String CACHE_EXTENSION = ".plan";
+    //The attributes a program line can have after the '|'
+    protected static final Set<String> KNOWN_ATTRIBUTES = new HashSet<String>(Arrays.asList(
+            "name", "after", "group", "ready", "timeout", "output", "logsize", "restart", "class", "prefetch", "idle"));
+
+    //Loads the plan for the program list at 'filename', from the cache if the list hasn't changed since it was parsed
+    protected static LaunchPlan load(String filename) throws IOException {
+        FlightRecording.ProgramlistLoadEvent loadEvent = new FlightRecording.ProgramlistLoadEvent();
+        loadEvent.begin();
+        File programlistFile = new File(filename);
+        byte[] content = Files.readAllBytes(programlistFile.toPath());
+        String hash = getHash(content);
+        File cacheFile = new File(filename + CACHE_EXTENSION);
+
+        LaunchPlan plan = readCache(cacheFile, hash);
+        if (plan != null) {
+            Util.debugPrint(Util.DEBUG_BASIC, "Using cached plan for '"+filename+"'");
+            recordLoad(loadEvent, filename, plan, true);
+            return plan;
+        }
+
+        plan = parse(readLines(new String(content, StandardCharsets.UTF_8)));
+        writeCache(cacheFile, hash, plan);
+        recordLoad(loadEvent, filename, plan, false);
+        return plan;
+    }
+    private static void recordLoad(FlightRecording.ProgramlistLoadEvent loadEvent, String filename, LaunchPlan plan, boolean cached) {
+        loadEvent.end();
+        if (!loadEvent.shouldCommit()) return;
+        loadEvent.file = filename;
+        loadEvent.cached = cached;
+        loadEvent.programCount = plan.getLaunchCount();
+        loadEvent.problemCount = plan.getDiagnostics().size();
+        loadEvent.commit();
+    }
+
+    //Like 'load', but if the program list can't be read, the reason is printed and an empty plan is returned
+    protected static LaunchPlan loadOrEmpty(String filename) {
+        try {
+            return load(filename);
+        } catch (FileNotFoundException fnfe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Program list not found! (" + fnfe + ")");
+        } catch (NoSuchFileException nsfe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Program list not found! (" + nsfe + ")");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while reading the program list: " + ioe);
+        }
+        return parse(new ArrayList<String>());
+    }
+
+    protected static List<String> readLines(String content) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new StringReader(content));
+        String line;
+        while ((line = reader.readLine()) != null) lines.add(line);
+        return lines;
+    }
+
+    protected static LaunchPlan parse(List<String> lines) {
+        int startWait = LaunchPlan.DEFAULT_START_WAIT, betweenWait = LaunchPlan.DEFAULT_BETWEEN_WAIT;
+        int adaptiveMinWait = 0, adaptiveMaxWait = 0, parallelism = 0, prefetchCount = 0, prefetchRate = Prefetcher.DEFAULT_RATE;
+        int idleCpuLimit = SystemIdleMonitor.DEFAULT_CPU_LIMIT, idleDiskLimit = SystemIdleMonitor.DEFAULT_DISK_LIMIT;
+        int idleTime = SystemIdleMonitor.DEFAULT_IDLE_TIME;
+        PressureGate pressureGate = null;
+        boolean alwaysOnTop = false, autoWait = false, betweenWaitIsSet = false;
+        List<Instruction> instructions = new ArrayList<Instruction>();
+        List<String> diagnostics = new ArrayList<String>();
+        //The names and groups that lines further down can use in 'after'
+        Set<String> knownNames = new HashSet<String>();
+        String currentGroup = null;
+        Map<String, ResourceClass> resourceClasses = new HashMap<String, ResourceClass>();
+        resourceClasses.put(ResourceClass.BACKGROUND, ResourceClass.getDefaultBackground());
+        String cgroupBase = null;
+
+        int lineNumber = 0;
+        for (String line : lines) {
+            lineNumber++;
+            Util.debugPrint(Util.DEBUG_VERBOSE, "LINE: " + line);
+            //Ignore comments and lines that are either empty or too short
+            if (line.startsWith("#") || line.trim().length() <= 3) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "Discarding line '"+line+"'");
+                continue;
+            }
+
+            List<String> words = Util.splitLine(line);
+            String command = words.get(0).toLowerCase();
+            String argument = words.size() > 1 ? words.get(1) : "";
+
+            if (command.equals("startwait")) {
+                startWait = parseSeconds(argument, startWait, lineNumber, diagnostics);
+            }
+            else if (command.equals("betweenwait")) {
+                //Only the first one is the initial value, the others change it from their point in the list on
+                if (!betweenWaitIsSet) {
+                    betweenWaitIsSet = true;
+                    betweenWait = parseSeconds(argument, betweenWait, lineNumber, diagnostics);
+                }
+                else instructions.add(new SetBetweenWaitInstruction(lineNumber, parseSeconds(argument, betweenWait, lineNumber, diagnostics)));
+            }
+            else if (command.equals("wait")) {
+                instructions.add(new WaitInstruction(lineNumber, parseSeconds(argument, 0, lineNumber, diagnostics)));
+            }
+            else if (command.equals("adaptivewait")) {
+                adaptiveMinWait = parseSeconds(argument, 0, lineNumber, diagnostics);
+                adaptiveMaxWait = parseSeconds(words.size() > 2 ? words.get(2) : "", 0, lineNumber, diagnostics);
+                //Make sure the bounds are the right way around
+                if (adaptiveMinWait > adaptiveMaxWait) {
+                    int swap = adaptiveMinWait;
+                    adaptiveMinWait = adaptiveMaxWait;
+                    adaptiveMaxWait = swap;
+                }
+            }
+            else if (command.equals("parallel")) {
+                parallelism = parseNumber(argument, parallelism, lineNumber, diagnostics);
+                if (parallelism < 1) {
+                    diagnostics.add("Line "+lineNumber+": 'Parallel' has to be at least 1.");
+                    parallelism = 0;
+                }
+            }
+            else if (command.equals("prefetch")) {
+                prefetchCount = parseNumber(argument, 0, lineNumber, diagnostics);
+                if (words.size() > 2) prefetchRate = parseNumber(words.get(2), Prefetcher.DEFAULT_RATE, lineNumber, diagnostics);
+                if (prefetchCount < 0 || prefetchRate < 1) {
+                    diagnostics.add("Line "+lineNumber+": 'Prefetch' needs a count of 0 or more and a speed of at least 1 MB per second.");
+                    prefetchCount = 0;
+                }
+            }
+            else if (command.equals("idlethreshold")) {
+                idleCpuLimit = parseNumber(argument, idleCpuLimit, lineNumber, diagnostics);
+                if (words.size() > 2) idleDiskLimit = parseNumber(words.get(2), idleDiskLimit, lineNumber, diagnostics);
+                if (words.size() > 3) idleTime = parseSeconds(words.get(3), idleTime, lineNumber, diagnostics);
+                if (idleCpuLimit < 1 || idleCpuLimit > 100 || idleDiskLimit < 1 || idleDiskLimit > 100) {
+                    diagnostics.add("Line "+lineNumber+": 'IdleThreshold' needs CPU and disk percentages between 1 and 100.");
+                    idleCpuLimit = SystemIdleMonitor.DEFAULT_CPU_LIMIT;
+                    idleDiskLimit = SystemIdleMonitor.DEFAULT_DISK_LIMIT;
+                }
+            }
+            else if (command.equals("pressurelimit")) {
+                int memoryLimit = PressureGate.DEFAULT_MEMORY_LIMIT, ioLimit = PressureGate.DEFAULT_IO_LIMIT;
+                int minAvailable = PressureGate.DEFAULT_MIN_AVAILABLE, timeout = PressureGate.DEFAULT_TIMEOUT;
+                if (words.size() > 1) memoryLimit = parseNumber(argument, memoryLimit, lineNumber, diagnostics);
+                if (words.size() > 2) ioLimit = parseNumber(words.get(2), ioLimit, lineNumber, diagnostics);
+                if (words.size() > 3) minAvailable = parseNumber(words.get(3), minAvailable, lineNumber, diagnostics);
+                if (words.size() > 4) timeout = parseSeconds(words.get(4), timeout, lineNumber, diagnostics);
+                if (memoryLimit < 0 || memoryLimit > 100 || ioLimit < 0 || ioLimit > 100 || minAvailable < 0) {
+                    diagnostics.add("Line "+lineNumber+": 'PressureLimit' needs memory and IO percentages between 0 and 100, and an available memory of 0 MB or more.");
+                    continue;
+                }
+                pressureGate = new PressureGate(memoryLimit, ioLimit, minAvailable, timeout);
+            }
+            else if (command.equals("autowait")) {
+                autoWait = true;
+            }
+            //Only used by the Editor, when saving the list
+            else if (command.equals("keepbackup")) {
+                continue;
+            }
+            else if (command.equals("class")) {
+                if (argument.length() == 0) {
+                    diagnostics.add("Line "+lineNumber+": A 'class' line needs a name.");
+                    continue;
+                }
+                ResourceClass resourceClass = new ResourceClass(argument);
+                for (String setting : words.subList(2, words.size())) {
+                    String error = resourceClass.set(setting);
+                    if (error != null) diagnostics.add("Line "+lineNumber+": "+error+" in class '"+argument+"', ignoring it.");
+                }
+                resourceClasses.put(argument, resourceClass);
+            }
+            else if (command.equals("cgroup")) {
+                cgroupBase = argument;
+            }
+            //If the line contains any permutation of "Always on top", make sure the window is just that
+            else if (line.toLowerCase().replaceAll(" ", "").equals("alwaysontop")) {
+                alwaysOnTop = true;
+            }
+            //For everything else, it's a program to start
+            else {
+                LaunchInstruction instruction = parseLaunch(line, lineNumber, diagnostics);
+                //Check that 'after' only uses names from above, so the order can't loop
+                String after = instruction.getAttribute("after");
+                if (after != null && after.length() > 0 && !after.equalsIgnoreCase("none")) {
+                    for (String name : after.split(",")) {
+                        if (!knownNames.contains(name)) {
+                            diagnostics.add("Line "+lineNumber+": '"+instruction.getProgram()+"' should start after '"+name
+                                    +"', but there's no entry or group with that name above it.");
+                        }
+                    }
+                }
+                String className = instruction.getAttribute("class");
+                if (className != null && !resourceClasses.containsKey(className)) {
+                    diagnostics.add("Line "+lineNumber+": There's no class '"+className+"' above '"+instruction.getProgram()+"', starting it normally.");
+                }
+                String group = instruction.getAttribute("group");
+                if (group != null && !group.equals(currentGroup) && !knownNames.add(group)) {
+                    diagnostics.add("Line "+lineNumber+": Group '"+group+"' is used more than once, only the last one can be used in 'after'.");
+                }
+                currentGroup = group;
+                String name = instruction.getAttribute("name");
+                if (name != null && !knownNames.add(name)) {
+                    diagnostics.add("Line "+lineNumber+": The name '"+name+"' is used more than once, only the last one can be used in 'after'.");
+                }
+                instructions.add(instruction);
+            }
+        }
+        for (ResourceClass resourceClass : resourceClasses.values()) resourceClass.setCgroupBase(cgroupBase);
+        LaunchPlan plan = new LaunchPlan(startWait, betweenWait, adaptiveMinWait, adaptiveMaxWait, parallelism,
+                alwaysOnTop, autoWait, prefetchCount, prefetchRate, idleCpuLimit, idleDiskLimit, idleTime, pressureGate, instructions, diagnostics, resourceClasses);
+        Util.debugPrint(Util.DEBUG_BASIC, "Parsed "+lineNumber+" lines into "+instructions.size()+" instructions, with "+diagnostics.size()+" problems.");
+        return plan;
+    }
+
+    //Splits a program line into the program and its attributes, like '?/usr/bin/chat | name=chat after=mail'
+    private static LaunchInstruction parseLaunch(String line, int lineNumber, List<String> diagnostics) {
+        String program = line, attributeText = "";
+        int separatorIndex = line.indexOf("|");
+        if (separatorIndex != -1) {
+            attributeText = line.substring(separatorIndex + 1);
+            program = line.substring(0, separatorIndex);
+        }
+        program = program.trim();
+        //A question mark before the program location means ask whether the program should be started
+        boolean ask = program.startsWith("?");
+        if (ask) program = program.substring(1).trim();
+        //Quotes around the program aren't needed, since everything before the '|' is the program, but allow them anyway
+        if (program.length() > 1 && program.startsWith("\"") && program.endsWith("\"")) {
+            program = program.substring(1, program.length() - 1);
+        }
+
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        for (String attribute : Util.splitLine(attributeText)) {
+            if (attribute.length() == 0) continue;
+            int equalsIndex = attribute.indexOf("=");
+            String key = (equalsIndex == -1 ? attribute : attribute.substring(0, equalsIndex)).toLowerCase();
+            String value = equalsIndex == -1 ? "" : attribute.substring(equalsIndex + 1);
+
+            if (!KNOWN_ATTRIBUTES.contains(key)) {
+                diagnostics.add("Line "+lineNumber+": Unknown attribute '"+attribute+"' for '"+program+"', ignoring it.");
+                continue;
+            }
+            if (key.equals("ready") && ReadinessProbe.getInstance(value) == null) {
+                diagnostics.add("Line "+lineNumber+": Invalid readiness probe '"+value+"' for '"+program+"', using 'BetweenWait' instead.");
+                continue;
+            }
+            if (key.equals("timeout")) value = String.valueOf(parseSeconds(value, ReadinessProbe.DEFAULT_TIMEOUT, lineNumber, diagnostics));
+            //A plain 'idle' waits for the default deadline
+            if (key.equals("idle")) {
+                if (value.length() == 0) value = String.valueOf(SystemIdleMonitor.DEFAULT_DEADLINE);
+                else value = String.valueOf(parseSeconds(value, SystemIdleMonitor.DEFAULT_DEADLINE, lineNumber, diagnostics));
+            }
+            if (key.equals("restart")) {
+                value = value.toLowerCase();
+                if (!value.equals("on-failure") && !value.equals("no")) {
+                    diagnostics.add("Line "+lineNumber+": Invalid restart '"+value+"' for '"+program+"', it can be 'on-failure' or 'no'.");
+                    continue;
+                }
+            }
+            if (key.equals("output") && ProcessOutput.getInstance(value, 0) == null) {
+                diagnostics.add("Line "+lineNumber+": Invalid output '"+value+"' for '"+program+"', discarding the output instead.");
+                continue;
+            }
+            if (key.equals("logsize")) {
+                int logSize = parseNumber(value, ProcessOutput.DEFAULT_LOG_SIZE, lineNumber, diagnostics);
+                if (logSize <= 0) {
+                    diagnostics.add("Line "+lineNumber+": Log size has to be larger than 0, using "+ProcessOutput.DEFAULT_LOG_SIZE+" instead.");
+                    logSize = ProcessOutput.DEFAULT_LOG_SIZE;
+                }
+                value = String.valueOf(logSize);
+            }
+            attributes.put(key, value);
+        }
+
+        if (ask) return new AskInstruction(lineNumber, program, attributes);
+        return new LaunchInstruction(lineNumber, program, attributes);
+    }
+
+    private static int parseNumber(String text, int defaultNumber, int lineNumber, List<String> diagnostics) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException nfe) {
+            diagnostics.add("Line "+lineNumber+": '"+text+"' isn't a number, using "+defaultNumber+" instead.");
+            return defaultNumber;
+        }
+    }
+    //Reads a number of seconds from the list, and returns it in ms. 'defaultTime' is in ms too
+    private static int parseSeconds(String text, int defaultTime, int lineNumber, List<String> diagnostics) {
+        int seconds = parseNumber(text, defaultTime / 1000, lineNumber, diagnostics);
+        if (seconds < 0) {
+            diagnostics.add("Line "+lineNumber+": Wait times can't be negative, using "+(defaultTime / 1000)+" instead.");
+            seconds = defaultTime / 1000;
+        }
+        return seconds * 1000;
+    }
+
+    private static String getHash(byte[] content) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            //Every Java implementation has SHA-256, but just in case, this makes sure the cache is never used
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: No SHA-256 available ("+nsae+")");
+            return "";
+        }
+    }
+
+    //Returns the cached plan, or null if there is none or it's for a different version of the program list
+    private static LaunchPlan readCache(File cacheFile, String hash) {
+        if (hash.length() == 0 || !cacheFile.exists()) return null;
+        try {
+            ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (input.readInt() != CACHE_VERSION || !input.readUTF().equals(hash)) {
+                    Util.debugPrint(Util.DEBUG_DETAILED, "Cached plan is outdated, parsing the program list again");
+                    return null;
+                }
+                return (LaunchPlan) input.readObject();
+            } finally {
+                input.close();
+            }
+        } catch (Exception e) {
+            //A broken cache just means parsing again
+            Util.debugPrint(Util.DEBUG_BASIC, "Couldn't read the cached plan, parsing the program list again ("+e+")");
+            return null;
+        }
+    }
+
+    private static void writeCache(File cacheFile, String hash, LaunchPlan plan) {
+        if (hash.length() == 0) return;
+        try {
+            ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+            try {
+                output.writeInt(CACHE_VERSION);
+                output.writeUTF(hash);
+                output.writeObject(plan);
+            } finally {
+                output.close();
+            }
+        } catch (IOException ioe) {
+            //Not being able to cache isn't a problem, the list will just be parsed again next time
+            Util.debugPrint(Util.DEBUG_BASIC, "Couldn't write the cached plan to '"+cacheFile+"' ("+ioe+")");
+        }
+    }
+}
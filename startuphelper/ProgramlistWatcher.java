@@ -0,0 +1,99 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+//Watches the program list while a run is going, and hands the engine the new list every time it's saved
+//The folder is watched instead of the file, since the Editor (and many other editors) save by renaming a new file over the old one
+//A save can take several writes, so the list is only read once nothing has changed for SETTLE_TIME
+public class ProgramlistWatcher implements Runnable {
+    //In ms
+    private static final long SETTLE_TIME = 500;
+
+    private final File programlistFile;
+    private final LaunchEngine engine;
+    private WatchService watchService;
+
+    protected ProgramlistWatcher(String programlistLocation, LaunchEngine engine) {
+        programlistFile = new File(programlistLocation).getAbsoluteFile();
+        this.engine = engine;
+    }
+
+    //Starts watching on a thread of its own. If the folder can't be watched, the list just isn't reloaded
+    protected void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            programlistFile.getParentFile().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't watch '"+programlistFile+"' for changes, so it won't be reloaded ("+ioe+")");
+            return;
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while watching '"+programlistFile+"' for changes: "+se);
+            return;
+        }
+        Thread thread = new Thread(this, "Program list watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected void stop() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "Couldn't stop watching the program list ("+ioe+")");
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!isProgramlistChanged(watchService.take())) continue;
+                //Wait until the saving is done
+                WatchKey key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    isProgramlistChanged(key);
+                    key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+                }
+                reload();
+            }
+        } catch (InterruptedException ie) {
+            Util.debugPrint(Util.DEBUG_DETAILED, "Program list watcher interrupted ("+ie+")");
+        } catch (ClosedWatchServiceException cwse) {
+            //'stop' was called, the run is over
+        }
+    }
+
+    //Returns whether any of the key's events are about the program list, and not the other files in its folder
+    private boolean isProgramlistChanged(WatchKey key) {
+        boolean isChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path && ((Path) event.context()).toString().equals(programlistFile.getName())) isChanged = true;
+        }
+        key.reset();
+        return isChanged;
+    }
+
+    private void reload() {
+        //If it's gone, it's probably being replaced, which is another change to wait for
+        if (!programlistFile.exists()) return;
+        try {
+            LaunchPlan plan = ProgramlistParser.load(programlistFile.getPath());
+            Util.debugPrint(Util.DEBUG_BASIC, "The program list was changed, reloading it.");
+            engine.reload(plan);
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while reloading the program list, keeping the old one: "+ioe);
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while reloading the program list, keeping the old one: "+se);
+        }
+    }
+}
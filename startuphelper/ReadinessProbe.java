@@ -0,0 +1,128 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+//A check for whether a started program is ready, so the programs after it don't have to wait for a fixed time
+//Set with the 'ready=' attribute in the program list:
+//  ready=port:[port] or ready=port:[host]:[port]   Ready once a TCP connection to the port is accepted
+//  ready=file:[path]                               Ready once the file (or socket) exists
+//  ready=cpu:[percentage]                          Ready once the system's CPU use has dropped below the percentage
+public abstract class ReadinessProbe {
+    //How often the probe is checked, in ms
+    protected static final long CHECK_INTERVAL = 250;
+    //How long to wait for a program to be ready if the list doesn't say, in ms
+    protected static final int DEFAULT_TIMEOUT = 60000;
+
+    //Returns the probe described by 'specification', or null if it isn't a valid one
+    public static ReadinessProbe getInstance(String specification) {
+        int colonIndex = specification.indexOf(":");
+        if (colonIndex == -1) return null;
+        String type = specification.substring(0, colonIndex).toLowerCase();
+        String argument = specification.substring(colonIndex + 1);
+
+        if (type.equals("port")) {
+            String host = "localhost";
+            if (argument.contains(":")) {
+                host = argument.substring(0, argument.lastIndexOf(":"));
+                argument = argument.substring(argument.lastIndexOf(":") + 1);
+            }
+            int port = Util.convertStringToInt(argument, -1);
+            if (port <= 0 || port > 65535) return null;
+            return new PortProbe(host, port);
+        }
+        else if (type.equals("file")) {
+            if (argument.length() == 0) return null;
+            return new FileProbe(argument);
+        }
+        else if (type.equals("cpu")) {
+            int percentage = Util.convertStringToInt(argument, -1);
+            if (percentage <= 0 || percentage > 100) return null;
+            return new CpuProbe(percentage);
+        }
+        return null;
+    }
+
+    //Returns whether the program is ready. Called on the probe thread, so it's allowed to take a little while
+    protected abstract boolean isReady();
+}
+
+
+//Ready once something accepts connections on the port
+class PortProbe extends ReadinessProbe {
+    private static final int CONNECT_TIMEOUT = 200;
+    private final String host;
+    private final int port;
+
+    PortProbe(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    protected boolean isReady() {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            return true;
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_VERBOSE, "Port "+host+":"+port+" not ready yet ("+ioe+")");
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "ERROR while closing probe socket: "+ioe);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "port "+host+":"+port;
+    }
+}
+
+//Ready once the file exists. Unix domain sockets and named pipes show up as files too
+class FileProbe extends ReadinessProbe {
+    private final File file;
+
+    FileProbe(String path) {
+        file = new File(path);
+    }
+
+    @Override
+    protected boolean isReady() {
+        return file.exists();
+    }
+
+    @Override
+    public String toString() {
+        return "file "+file.getPath();
+    }
+}
+
+//Ready once the CPU use of the whole system has settled below the percentage
+//Only supported where LoadMonitor can read the load. Elsewhere the probe just waits for its timeout
+//The load is measured between two checks, so the first check never finds it ready
+class CpuProbe extends ReadinessProbe {
+    private final LoadMonitor loadMonitor = new LoadMonitor();
+    private final int percentage;
+
+    CpuProbe(int percentage) {
+        this.percentage = percentage;
+    }
+
+    @Override
+    protected boolean isReady() {
+        double load = loadMonitor.sampleLoad();
+        return load >= 0 && load * 100 < percentage;
+    }
+
+    @Override
+    public String toString() {
+        return "CPU below "+percentage+"%";
+    }
+}
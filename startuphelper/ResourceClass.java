@@ -0,0 +1,158 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//How much of the machine a started program gets, so background tools can start right away without slowing down the rest
+//Defined in the program list with a 'class' line, and used with the 'class=' attribute:
+//  class [name] nice=[-20..19] ionice=idle|besteffort:[0..7]|realtime:[0..7] cpus=[list, like 0-1,3] cpuweight=[1..10000] ioweight=[1..10000]
+//There's always a 'background' class, unless the list defines its own
+//Only works on Linux. The program is started through 'nice', 'ionice' and 'taskset', which replace themselves with the program,
+// so its process ID stays the same. The weights need a cgroup v2 directory StartupHelper can write to, set with a 'cgroup [path]' line
+public class ResourceClass implements Serializable {
+    private static final long serialVersionUID = 1L;
+    protected static final String BACKGROUND = "background";
+    protected static final int UNSET = Integer.MIN_VALUE;
+    private static final int IO_CLASS_REALTIME = 1, IO_CLASS_BEST_EFFORT = 2, IO_CLASS_IDLE = 3;
+
+    private final String name;
+    private int nice = UNSET, ioClass = UNSET, ioLevel = UNSET, cpuWeight = UNSET, ioWeight = UNSET;
+    private String cpus;
+    //The cgroup v2 directory from the 'cgroup' line, or null if there isn't one
+    private String cgroupBase;
+    //The cgroup the programs of this class are put in. Created the first time it's needed
+    private transient File cgroupDirectory;
+    private transient boolean cgroupCreated = false;
+
+    protected ResourceClass(String name) {
+        this.name = name;
+    }
+
+    //The class used for the 'background' name if the list doesn't define it
+    protected static ResourceClass getDefaultBackground() {
+        ResourceClass background = new ResourceClass(BACKGROUND);
+        background.nice = 10;
+        background.ioClass = IO_CLASS_IDLE;
+        background.cpuWeight = 20;
+        background.ioWeight = 20;
+        return background;
+    }
+
+    //Sets one of the settings from a 'class' line, like 'nice=10'. Returns an error message, or null if the setting is valid
+    protected String set(String setting) {
+        int equalsIndex = setting.indexOf("=");
+        if (equalsIndex == -1) return "'"+setting+"' should look like 'setting=value'";
+        String key = setting.substring(0, equalsIndex).toLowerCase();
+        String value = setting.substring(equalsIndex + 1).toLowerCase();
+        try {
+            if (key.equals("nice")) {
+                nice = Integer.parseInt(value);
+                if (nice < -20 || nice > 19) return "'nice' has to be between -20 and 19";
+            }
+            else if (key.equals("ionice")) {
+                String level = "";
+                if (value.contains(":")) {
+                    level = value.substring(value.indexOf(":") + 1);
+                    value = value.substring(0, value.indexOf(":"));
+                }
+                if (value.equals("idle")) ioClass = IO_CLASS_IDLE;
+                else if (value.equals("besteffort")) ioClass = IO_CLASS_BEST_EFFORT;
+                else if (value.equals("realtime")) ioClass = IO_CLASS_REALTIME;
+                else return "'ionice' has to be 'idle', 'besteffort' or 'realtime'";
+                if (level.length() > 0) {
+                    if (ioClass == IO_CLASS_IDLE) return "'ionice=idle' doesn't have a level";
+                    ioLevel = Integer.parseInt(level);
+                    if (ioLevel < 0 || ioLevel > 7) return "The 'ionice' level has to be between 0 and 7";
+                }
+            }
+            else if (key.equals("cpus")) {
+                if (!value.matches("[0-9]+(-[0-9]+)?(,[0-9]+(-[0-9]+)?)*")) return "'cpus' should be a list like '0-1,3'";
+                cpus = value;
+            }
+            else if (key.equals("cpuweight")) {
+                cpuWeight = Integer.parseInt(value);
+                if (cpuWeight < 1 || cpuWeight > 10000) return "'cpuweight' has to be between 1 and 10000";
+            }
+            else if (key.equals("ioweight")) {
+                ioWeight = Integer.parseInt(value);
+                if (ioWeight < 1 || ioWeight > 10000) return "'ioweight' has to be between 1 and 10000";
+            }
+            else return "Unknown setting '"+key+"'";
+        } catch (NumberFormatException nfe) {
+            return "'"+value+"' isn't a number";
+        }
+        return null;
+    }
+
+    protected String getName() {
+        return name;
+    }
+    protected boolean hasWeights() {
+        return cpuWeight != UNSET || ioWeight != UNSET;
+    }
+    protected void setCgroupBase(String cgroupBase) {
+        this.cgroupBase = cgroupBase;
+    }
+
+    //Returns the command, with 'nice', 'ionice' and 'taskset' in front of it as needed
+    //If there's a 'cgroup' line and this class has weights, the command first moves itself into this class's cgroup
+    protected String[] wrapCommand(String[] command) {
+        List<String> wrappedCommand = new ArrayList<String>();
+        File cgroup = cgroupBase != null && hasWeights() ? getCgroupDirectory(new File(cgroupBase)) : null;
+        if (cgroup != null) {
+            //The shell moves itself into the cgroup and then becomes the program, so the program never runs outside of it
+            //If the move fails, the program is still started, just without the weights
+            wrappedCommand.addAll(Arrays.asList("sh", "-c", "echo $$ > \"$0/cgroup.procs\"; exec \"$@\"", cgroup.getPath()));
+        }
+        if (nice != UNSET) wrappedCommand.addAll(Arrays.asList("nice", "-n", String.valueOf(nice)));
+        if (ioClass != UNSET) {
+            wrappedCommand.addAll(Arrays.asList("ionice", "-c", String.valueOf(ioClass)));
+            if (ioLevel != UNSET) wrappedCommand.addAll(Arrays.asList("-n", String.valueOf(ioLevel)));
+        }
+        if (cpus != null) wrappedCommand.addAll(Arrays.asList("taskset", "-c", cpus));
+        wrappedCommand.addAll(Arrays.asList(command));
+        return wrappedCommand.toArray(new String[wrappedCommand.size()]);
+    }
+
+    //Creates '[cgroupBase]/[name]' with this class's weights. Returns null if that isn't possible, and then doesn't try again
+    private synchronized File getCgroupDirectory(File cgroupBase) {
+        if (cgroupCreated) return cgroupDirectory;
+        cgroupCreated = true;
+        try {
+            //The weights only work if the controllers are handed down from the base cgroup
+            if (cpuWeight != UNSET) writeCgroupFile(new File(cgroupBase, "cgroup.subtree_control"), "+cpu");
+            if (ioWeight != UNSET) writeCgroupFile(new File(cgroupBase, "cgroup.subtree_control"), "+io");
+            File directory = new File(cgroupBase, "startuphelper-" + name);
+            if (!directory.isDirectory()) Files.createDirectory(directory.toPath());
+            if (cpuWeight != UNSET) writeCgroupFile(new File(directory, "cpu.weight"), String.valueOf(cpuWeight));
+            if (ioWeight != UNSET) writeCgroupFile(new File(directory, "io.weight"), "default " + ioWeight);
+            cgroupDirectory = directory;
+            Util.debugPrint(Util.DEBUG_DETAILED, "Created cgroup '"+directory+"' for class '"+name+"'");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't set up a cgroup for class '"+name+"' in '"+cgroupBase+"', ignoring its weights ("+ioe+")");
+        } catch (SecurityException se) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while setting up a cgroup for class '"+name+"': "+se);
+        }
+        return cgroupDirectory;
+    }
+
+    private static void writeCgroupFile(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,94 @@
+package startuphelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+//Remembers how long each program kept the computer busy on the last few runs, so 'AutoWait' can wait just as long after it
+//Stored next to the program list as '[list].history', one line per program with its most recent times in ms
+public class RunHistory {
+    protected static final String EXTENSION = ".history";
+    //How many runs are remembered per program
+    protected static final int MAX_SAMPLES = 20;
+    //The learned wait is this percentile of the remembered times, so one quick run doesn't make the next wait too short
+    protected static final int PERCENTILE = 90;
+
+    private final String filename;
+    private final Properties samples = new Properties();
+
+    public RunHistory(String filename) {
+        this.filename = filename;
+        if (!new File(filename).exists()) return;
+        try {
+            FileInputStream input = new FileInputStream(filename);
+            try {
+                samples.load(input);
+            } finally {
+                input.close();
+            }
+            Util.debugPrint(Util.DEBUG_DETAILED, "Loaded the history of "+samples.size()+" programs from '"+filename+"'");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while reading the run history: "+ioe);
+        } catch (IllegalArgumentException iae) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: The run history in '"+filename+"' is damaged, starting over ("+iae+")");
+            samples.clear();
+        }
+    }
+
+    //Returns the learned wait after 'program' in ms, or -1 if it hasn't been measured yet
+    protected synchronized int getLearnedWait(String program) {
+        List<Integer> times = getSamples(program);
+        if (times.isEmpty()) return -1;
+        Collections.sort(times);
+        int index = (int) Math.ceil(PERCENTILE / 100.0 * times.size()) - 1;
+        return times.get(Math.max(0, index));
+    }
+
+    //Adds a measured time in ms, forgetting the oldest one if there are too many
+    protected synchronized void addSample(String program, int time) {
+        List<Integer> times = getSamples(program);
+        times.add(time);
+        while (times.size() > MAX_SAMPLES) times.remove(0);
+        StringBuilder value = new StringBuilder();
+        for (Integer sample : times) {
+            if (value.length() > 0) value.append(",");
+            value.append(sample);
+        }
+        samples.setProperty(program, value.toString());
+    }
+
+    private List<Integer> getSamples(String program) {
+        List<Integer> times = new ArrayList<Integer>();
+        String value = samples.getProperty(program);
+        if (value == null || value.length() == 0) return times;
+        for (String sample : value.split(",")) {
+            try {
+                times.add(Integer.parseInt(sample.trim()));
+            } catch (NumberFormatException nfe) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "Ignoring damaged history value '"+sample+"' for '"+program+"'");
+            }
+        }
+        return times;
+    }
+
+    protected synchronized void save() {
+        try {
+            FileOutputStream output = new FileOutputStream(filename);
+            try {
+                samples.store(output, "StartupHelper run history: how long each program kept the computer busy, in ms");
+            } finally {
+                output.close();
+            }
+        } catch (FileNotFoundException fnfe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Can't write the run history to '"+filename+"' ("+fnfe+")");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while writing the run history: "+ioe);
+        }
+    }
+}
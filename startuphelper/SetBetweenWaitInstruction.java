@@ -0,0 +1,22 @@
+package startuphelper;
+
+//Change the wait between programs from here on. Written as 'BetweenWait [seconds]', after the first one
+class SetBetweenWaitInstruction extends Instruction {
+    private static final long serialVersionUID = 1L;
+    private final int betweenWait;
+
+    SetBetweenWaitInstruction(int lineNumber, int betweenWait) {
+        super(lineNumber);
+        this.betweenWait = betweenWait;
+    }
+
+    //In ms
+    protected int getBetweenWait() {
+        return betweenWait;
+    }
+
+    @Override
+    public String toString() {
+        return "BetweenWait " + betweenWait / 1000;
+    }
+}
@@ -6,15 +6,12 @@ package startuphelper;
 
 import java.awt.BorderLayout;
 import java.awt.Desktop;
+import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.LinkedList;
-import java.util.Scanner;
 import javax.swing.*;
 
 
@@ -33,14 +30,27 @@ public class StartupHelper extends JFrame {
     private JButton editProgramlistButton;
     private JProgressBar progressBar;
     private ProgramLoopWorker worker;
+    //The Editor opened during the run, if any
+    private ProgramlistEditor editor;
     
     private FileLauncher fileLauncher;
     
-    private int startWait = 10000, betweenWait = 10000;
-    private LinkedList<String> programQueue;
-    private LinkedList<String> errorList;
+    private LaunchPlan launchPlan;
+    //Records a timeline of this run, if '-trace:[file]' was given
+    private StartupTrace trace;
+    //Whether to stay around after the list is done, to restart programs marked 'restart=on-failure'
+    private boolean supervise = false;
+    //Where to listen for commands from scripts, if '-control' was given
+    private String controlSocketLocation;
+    //Records a flight recording of this run, if '-jfr:[file]' was given
+    private FlightRecording flightRecording;
     
     public static void main(String[] args) {
+        //Headless mode doesn't need any of the window stuff, so hand it off before anything else gets set up
+        if (HeadlessLauncher.isHeadlessRequested(args)) {
+            HeadlessLauncher.main(args);
+            return;
+        }
         StartupHelper sh = new StartupHelper(args);
     }
     
@@ -48,6 +58,8 @@ public class StartupHelper extends JFrame {
         boolean startEditor = false;
         //Read through all the arguments to see if any of them are valid
         for (String arg : args) {
+            //File names shouldn't be converted to lower case, so keep the original too
+            String originalArg = arg;
             //Converting everything to lower case makes it easier to pick the right option
             arg = arg.toLowerCase();
             //If there are any parameters too (like 'debug:BASIC'), retrieve those
@@ -67,14 +79,32 @@ public class StartupHelper extends JFrame {
             else if (arg.equals("editor")) {
                 startEditor = true;
             }
+            else if (arg.equals("supervise")) {
+                supervise = true;
+            }
             //Allow specification of a different location of the programlist file
             else if (arg.startsWith("file:")) {
-                //If the file location is surrounded with quotes, as it should be if it contains spaces, remove them
-                if (parameter.startsWith("\"") || parameter.startsWith("'")) parameter = parameter.substring(1);
-                if (parameter.endsWith("\"") || parameter.endsWith("'")) parameter = parameter.substring(0, parameter.length());
-                programlistLocation = parameter;
+                //Taken from the original argument, since file names are case-sensitive, without the quotes it needs if it contains spaces
+                programlistLocation = Util.stripQuotes(originalArg.substring(originalArg.indexOf(":")+1));
+            }
+            //Record a timeline of the run, and write it to the given file
+            else if (arg.startsWith("trace:")) {
+                trace = new StartupTrace(Util.stripQuotes(originalArg.substring(originalArg.indexOf(":")+1)));
+            }
+            //Record a flight recording of the run, and write it to the given file
+            else if (arg.startsWith("jfr:")) {
+                flightRecording = new FlightRecording(Util.stripQuotes(originalArg.substring(originalArg.indexOf(":")+1)));
+            }
+            //Take commands through a Unix domain socket
+            else if (arg.equals("control")) {
+                controlSocketLocation = ControlSocket.getDefaultLocation();
+            }
+            else if (arg.startsWith("control:")) {
+                controlSocketLocation = Util.stripQuotes(originalArg.substring(originalArg.indexOf(":")+1));
             }
         }
+        //Make the debug level apply to the messages from the other classes too
+        Util.setDebugLevel(programDebugLevel);
         
         //Check if the required program list exists, otherwise redirect to the editor
         if (new File(programlistLocation).exists() == false) {
@@ -89,9 +119,12 @@ public class StartupHelper extends JFrame {
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
                 public void run() {
-                    programQueue = loadProgramList(Util.DEFAULT_PROGRAMLIST_LOCATION);
-                    errorList = new LinkedList<String>();
+                    long loadStart = trace != null ? trace.now() : 0;
+                    launchPlan = loadProgramList(programlistLocation);
+                    if (trace != null) trace.addSpan("Load program list", StartupTrace.CATEGORY_STARTUP, loadStart, trace.now(), "");
+                    long windowStart = trace != null ? trace.now() : 0;
                     createAndShowGUI();
+                    if (trace != null) trace.addSpan("Create window", StartupTrace.CATEGORY_STARTUP, windowStart, trace.now(), "");
                     startProgramLoop();
                 }
             });
@@ -114,7 +147,7 @@ public class StartupHelper extends JFrame {
                 "Really quit?", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
             //Stop the worker thread, if it's been started already
             if (worker != null) {
-                worker.cancel(false);
+                worker.cancelRun();
             }
             System.exit(status);
         }
@@ -127,14 +160,8 @@ public class StartupHelper extends JFrame {
         exit(0);
     }
     
-    protected LinkedList<String> getProgramQueue() {
-        return programQueue;
-    }
-    protected int getStartWait() {
-        return startWait;
-    }
-    protected int getBetweenWait() {
-        return betweenWait;
+    protected LaunchPlan getLaunchPlan() {
+        return launchPlan;
     }
     
     private void createAndShowGUI() {
@@ -150,7 +177,7 @@ public class StartupHelper extends JFrame {
       addWindowListener(new WindowHandler());
 
       try {
-          fileLauncher = FileLauncher.getInstance();
+          fileLauncher = FileLauncher.getInstance(true);
       } catch (UnsupportedOperationException uoe) {
           showError("This OS is not supported. Please report your OS name and how to launch programs to the project", "ERROR: Not supported");
           System.exit(1);
@@ -167,10 +194,10 @@ public class StartupHelper extends JFrame {
       //Create a place for the control buttons, and the buttons themselves
       JPanel buttonPanel = new JPanel();
       ButtonHandler buttonHandler = new ButtonHandler();
-      startButton = Util.createButton("Start", buttonPanel, buttonHandler, false);
-      skipButton = Util.createButton("Skip", buttonPanel, buttonHandler, false);
-      pauseButton = Util.createButton("Resume", buttonPanel, buttonHandler, false); //'Resume' instead of 'Pause' to fix alignment oddity
-      quitButton = Util.createButton("Quit", buttonPanel, buttonHandler, false);
+      startButton = GuiUtil.createButton("Start", buttonPanel, buttonHandler, false);
+      skipButton = GuiUtil.createButton("Skip", buttonPanel, buttonHandler, false);
+      pauseButton = GuiUtil.createButton("Resume", buttonPanel, buttonHandler, false); //'Resume' instead of 'Pause' to fix alignment oddity
+      quitButton = GuiUtil.createButton("Quit", buttonPanel, buttonHandler, false);
       add(buttonPanel, BorderLayout.CENTER);
 
       editProgramlistButton = new JButton("Edit Program List...");
@@ -183,48 +210,15 @@ public class StartupHelper extends JFrame {
       setLocationRelativeTo(null);
     } //End 'createAndShowGUI'
     
-    private LinkedList<String> loadProgramList(String filename) {
-        LinkedList<String> queue = new LinkedList<String>();
-        boolean betweenWaitIsSet = false; //Retrieve the initial value for 'betweenWait'. Subsequent sets should be executed at their point in the queue.
+    private LaunchPlan loadProgramList(String filename) {
         //Load in the combined program list/settings file
-        try {
-            Scanner scanner = new Scanner(new File(filename));
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                debugPrint(Util.DEBUG_VERBOSE, "LINE: " + line);
-
-                //Ignore comments and lines that are either empty or too short
-                if (!line.startsWith("#") && line.length() > 3) {
-                    String lineLowerCase = line.toLowerCase();
-                    //Retrieve the first wait period
-                    if (lineLowerCase.startsWith("startwait")) {
-                        //Get the number next to 'startWait'
-                        startWait = Util.convertStringToInt(Util.getArgumentFromLine(line), 1) * 1000;
-                    }
-                    else if (lineLowerCase.startsWith("betweenwait") && betweenWaitIsSet == false) {
-                        betweenWaitIsSet = true;
-                        betweenWait = Util.convertStringToInt(Util.getArgumentFromLine(line), 1) * 1000;
-                    }
-                    //If the line contains any permutation of "Always on top", make sure the window is just that
-                    else if (lineLowerCase.replaceAll(" ", "").equals("alwaysontop")) {
-                        setAlwaysOnTop(true);
-                    }
-                    //For everything else, store it in the queue for later
-                    else {
-                        queue.add(line);
-                    }
-                }
-                else Util.debugPrint(Util.DEBUG_DETAILED, "Discarding line '"+line+"'");
-            }
-            scanner.close();
-        } catch (FileNotFoundException fnfe) {
-            debugPrint(Util.DEBUG_ALWAYS, "Program list not found! (" + fnfe + ")");
-        } catch (IOException ioe) {
-            debugPrint(Util.DEBUG_ALWAYS, "ERROR while reading the program list: " + ioe);
-        }
-        debugPrint(Util.DEBUG_BASIC, "Items in ProgramQueue: " + queue.size());
+        LaunchPlan plan = ProgramlistParser.loadOrEmpty(filename);
         
-        return queue;
+        //If the list contains any permutation of "Always on top", make sure the window is just that
+        if (plan.isAlwaysOnTop()) setAlwaysOnTop(true);
+        debugPrint(Util.DEBUG_BASIC, "Programs in plan: " + plan.getLaunchCount());
+        
+        return plan;
     } //End of 'loadProgramList'
     
     
@@ -236,7 +230,12 @@ public class StartupHelper extends JFrame {
         repaint();
         
         //Start up the background thread for reading through the program queue
-        worker = new ProgramLoopWorker(this);
+        //Only read the history if it's going to be used
+        RunHistory history = null;
+        if (launchPlan.isAutoWait()) history = new RunHistory(programlistLocation + RunHistory.EXTENSION);
+        worker = new ProgramLoopWorker(this, launchPlan, fileLauncher, trace, supervise, history, programlistLocation);
+        if (controlSocketLocation != null) worker.listenForControl(controlSocketLocation);
+        worker.setFlightRecording(flightRecording);
         worker.execute();
         
         //Now that everything is properly set up, enable the control buttons
@@ -247,40 +246,42 @@ public class StartupHelper extends JFrame {
         updatePauseButton();
     }
     
-    protected void startProgram(String programLocation) {
-        //TODO: Move 'startProgram' function to the Worker?
-        debugPrint(Util.DEBUG_BASIC, "Starting program '"+programLocation+"'.");
-        try {
-            File programFile = new File(programLocation);
-            if (!programFile.exists()) throw new FileNotFoundException();
-            //Desktop.getDesktop().open(programFile);
-            ///Runtime.getRuntime().exec("cmd /c start \"StartupHelper\" \""+programLocation+"\"");
-            fileLauncher.open(programLocation);
-        } catch (FileNotFoundException fnfe) {
-            debugPrint(Util.DEBUG_ALWAYS, "ERROR, file '"+programLocation+"' not found ("+fnfe+")");
-            //showError("File '"+programLocation+"' was not found. Please check for spelling errors.");
-            errorList.add("File '"+programLocation+"' was not found. Please check for spelling errors.");
-        } catch (IOException ioe) {
-            debugPrint(Util.DEBUG_ALWAYS, "ERROR while opening '"+programLocation+"': "+ioe);
-            //showError("Error while trying to start '"+programLocation+"\n("+ioe+")");
-            errorList.add("IO error while trying to start '"+programLocation+" ("+ioe+")");
-        } catch (SecurityException se) {
-            debugPrint(Util.DEBUG_ALWAYS, "Security ERROR while trying to open '"+programLocation+"': "+se);
-            errorList.add("Read error while trying to start '"+programLocation+" ("+se+")");
-        } catch (Exception e) {
-            debugPrint(Util.DEBUG_ALWAYS, "UNKNOWN ERROR: "+e);
-            //showError("Generic error while trying to start '"+programLocation+"': "+e, "ERROR");
-            errorList.add("Generic error while trying to start '"+programLocation+"': "+e);
-        }
+    //Sets the progress bar to 'waitLeft' out of 'resolution'. The bar repaints itself, and only if it changed
+    protected void updateDisplay(int waitLeft, int resolution) {
+        if (progressBar.getMaximum() != resolution) progressBar.setMaximum(resolution);
+        progressBar.setValue(waitLeft);
     }
-    protected void updateDisplay(long percentage) {
-        progressBar.setValue((int) percentage);
-        //pack();
-        repaint();
+    //How many different lengths the progress bar can show, which is its width in pixels
+    protected int getProgressResolution() {
+        Insets insets = progressBar.getInsets();
+        int width = progressBar.getWidth() - insets.left - insets.right;
+        //Before the window is laid out, fall back to percentages
+        return width > 0 ? width : 100;
+    }
+    //Whether the progress bar can be seen at all. Windows that are covered by other windows still count as visible
+    protected boolean isDisplayVisible() {
+        return isShowing() && (getExtendedState() & ICONIFIED) == 0;
     }
     protected void setProgressbarString(String text) {
         progressBar.setString(text);
     }
+    //Called when the run is over. If the Editor is still open, it's left open, and it exits StartupHelper once it's closed
+    protected void runFinished() {
+        if (editor != null && !editor.isClosed()) {
+            editor.setExitOnClose(true);
+            dispose();
+        }
+        else System.exit(0);
+    }
+    //Once all programs are started, the window only stays around to allow quitting the supervisor, so get it out of the way
+    protected void showSupervising() {
+        progressBar.setValue(0);
+        progressBar.setString("Supervising programs...");
+        startButton.setEnabled(false);
+        skipButton.setEnabled(false);
+        pauseButton.setEnabled(false);
+        setState(ICONIFIED);
+    }
     
     protected void updatePauseButton() {
         if (worker.isPaused()) pauseButton.setText("Resume");
@@ -289,23 +290,9 @@ public class StartupHelper extends JFrame {
     
     //This method is used by the Start and Skip buttons, to skip waiting for the countdown
     //Both buttons do basically the same thing, with the only difference being started the program yes or no
+    //The worker takes care of it the next time it wakes up, even if it's paused, so this returns right away
     protected void skipWaitingForProgramStart(boolean startProgram) {
-        //First make sure the worker is actually running, to prevent confusion
-        boolean workerIsPaused = worker.isPaused();
-        worker.setPaused(false);
-        //Then make sure the program gets started as appropriate, and move beyond it
-        worker.setStartProgram(startProgram);
-        worker.setProgramStartTime(System.currentTimeMillis() - 1);
-        
-        if (workerIsPaused) {
-            //Give the worker some time to start the program
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ie) {
-                Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: Skip/Start button sleep interrupted! ("+ie+")");
-            }
-            worker.setPaused(true);
-        }
+        worker.skipWaitingForNextProgram(startProgram);
         //Make sure the pause button still displays the correct text
         updatePauseButton();
     }
@@ -314,9 +301,7 @@ public class StartupHelper extends JFrame {
         JOptionPane.showMessageDialog(this, message, title, JOptionPane.ERROR_MESSAGE);
     }
 
-    protected LinkedList<String> getErrorList() {
-        return errorList;
-    }
+
     
     
     private class ButtonHandler implements ActionListener {
@@ -339,10 +324,10 @@ public class StartupHelper extends JFrame {
                 skipWaitingForProgramStart(false);
             }
             else if (e.getSource() == quitButton) exit();
+            //The run keeps going while the list is edited, and picks up the changes once they're saved
             else if (e.getSource() == editProgramlistButton) {
-                ProgramlistEditor pe = new ProgramlistEditor(programlistLocation);
-                worker.cancel(false);
-                dispose();
+                if (editor == null || editor.isClosed()) editor = new ProgramlistEditor(programlistLocation, false);
+                else editor.toFront();
             }
         }        
     }
@@ -353,5 +338,13 @@ public class StartupHelper extends JFrame {
             //Cleanly exit, including stopping the background thread
             exit(0);
         }
+        @Override
+        public void windowIconified(WindowEvent e) {
+            if (worker != null) worker.displayVisibilityChanged();
+        }
+        @Override
+        public void windowDeiconified(WindowEvent e) {
+            if (worker != null) worker.displayVisibilityChanged();
+        }
     }
 }
@@ -0,0 +1,142 @@
+package startuphelper;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+//Records a timeline of one run: StartupHelper's own startup, waits, program starts, questions, pauses and skips
+//Written at the end of the run as a Chrome trace (open it in chrome://tracing or ui.perfetto.dev) and as a CSV file
+//Enabled with '-trace:[file]' on the command line, which writes '[file].json' and '[file].csv'
+public class StartupTrace {
+    protected static final String CATEGORY_STARTUP = "startup", CATEGORY_WAIT = "wait", CATEGORY_LAUNCH = "launch",
+            CATEGORY_ASK = "ask", CATEGORY_READY = "ready", CATEGORY_CONTROL = "control";
+
+    private final String filename;
+    //All times in the trace are in microseconds since the JVM started
+    private final long jvmStartTime, baseNanoTime, baseOffset;
+    private final List<TraceEvent> events = new ArrayList<TraceEvent>();
+
+    public StartupTrace(String filename) {
+        this.filename = filename;
+        jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+        baseNanoTime = System.nanoTime();
+        baseOffset = (System.currentTimeMillis() - jvmStartTime) * 1000;
+        //Everything before the trace was created is StartupHelper starting up
+        addEvent(new TraceEvent("StartupHelper startup", CATEGORY_STARTUP, 0, baseOffset, "main", ""));
+    }
+
+    //Converts a System.nanoTime() value to trace time
+    protected long fromNanoTime(long nanoTime) {
+        return (nanoTime - baseNanoTime) / 1000 + baseOffset;
+    }
+    //Converts a System.currentTimeMillis() value to trace time
+    protected long fromMillis(long millis) {
+        return (millis - jvmStartTime) * 1000;
+    }
+    protected long now() {
+        return fromNanoTime(System.nanoTime());
+    }
+
+    //Adds something that took a while. Start and end are in trace time
+    protected void addSpan(String name, String category, long start, long end, String detail) {
+        addEvent(new TraceEvent(name, category, start, Math.max(0, end - start), Thread.currentThread().getName(), detail));
+    }
+    //Adds something that happened at one moment, like pressing a button
+    protected void addInstant(String name, String category, String detail) {
+        addEvent(new TraceEvent(name, category, now(), -1, Thread.currentThread().getName(), detail));
+    }
+    private void addEvent(TraceEvent event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    //Writes both the Chrome trace and the CSV file
+    protected void write() {
+        List<TraceEvent> eventsCopy;
+        synchronized (events) {
+            eventsCopy = new ArrayList<TraceEvent>(events);
+        }
+        try {
+            writeChromeTrace(filename + ".json", eventsCopy);
+            writeCsv(filename + ".csv", eventsCopy);
+            Util.debugPrint(Util.DEBUG_BASIC, "Trace with "+eventsCopy.size()+" events written to '"+filename+".json' and '"+filename+".csv'");
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "IO ERROR while writing trace: "+ioe);
+        }
+    }
+
+    private void writeChromeTrace(String traceFilename, List<TraceEvent> events) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(traceFilename));
+        try {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean first = true;
+            for (TraceEvent event : events) {
+                if (!first) writer.write(",");
+                first = false;
+                writer.newLine();
+                writer.write("{\"name\":\"" + escapeJson(event.name) + "\",\"cat\":\"" + event.category + "\"");
+                //Spans are 'complete' events, the rest are 'instant' events
+                if (event.duration >= 0) writer.write(",\"ph\":\"X\",\"dur\":" + event.duration);
+                else writer.write(",\"ph\":\"i\",\"s\":\"p\"");
+                writer.write(",\"ts\":" + event.start + ",\"pid\":1,\"tid\":\"" + escapeJson(event.thread) + "\"");
+                writer.write(",\"args\":{\"detail\":\"" + escapeJson(event.detail) + "\"}}");
+            }
+            writer.newLine();
+            writer.write("]}");
+            writer.newLine();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeCsv(String csvFilename, List<TraceEvent> events) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(csvFilename));
+        try {
+            writer.write("name,category,start_ms,duration_ms,thread,detail");
+            writer.newLine();
+            for (TraceEvent event : events) {
+                writer.write(escapeCsv(event.name) + "," + event.category + "," + String.format("%.3f", event.start / 1000.0) + ","
+                        + (event.duration >= 0 ? String.format("%.3f", event.duration / 1000.0) : "") + ","
+                        + escapeCsv(event.thread) + "," + escapeCsv(event.detail));
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String escapeJson(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') escaped.append('\\').append(c);
+            else if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+    private static String escapeCsv(String text) {
+        if (text.contains(",") || text.contains("\"") || text.contains("\n")) return "\"" + text.replace("\"", "\"\"") + "\"";
+        return text;
+    }
+
+
+    private static class TraceEvent {
+        private final String name, category, thread, detail;
+        //In microseconds. A duration of -1 means it's an instant event
+        private final long start, duration;
+
+        private TraceEvent(String name, String category, long start, long duration, String thread, String detail) {
+            this.name = name;
+            this.category = category;
+            this.start = start;
+            this.duration = duration;
+            this.thread = thread;
+            this.detail = detail == null ? "" : detail;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package startuphelper;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+//Keeps StartupHelper running after the list is done, to restart programs marked 'restart=on-failure' when they crash
+//Every program's Process.onExit() puts it on one queue, and 'run' handles those one at a time, so there's no thread per program
+//A program that exits with an error is started again after a wait that doubles each time, up to MAX_BACKOFF
+//If it fails CRASH_LOOP_LIMIT times within CRASH_LOOP_WINDOW, it's left alone and an error is reported
+public class Supervisor {
+    //All times in ms
+    protected static final long FIRST_BACKOFF = 1000, MAX_BACKOFF = 60000, CRASH_LOOP_WINDOW = 300000;
+    protected static final int CRASH_LOOP_LIMIT = 5;
+
+    private final LaunchEngine engine;
+    private final Map<LaunchEntry, SupervisedProgram> programs = new HashMap<LaunchEntry, SupervisedProgram>();
+    //Filled by the onExit() callbacks, emptied by 'run'
+    private final BlockingQueue<SupervisedProgram> exitedPrograms = new LinkedBlockingQueue<SupervisedProgram>();
+    //Only used on the thread that calls 'run', ordered by when the program should be restarted
+    private final PriorityQueue<SupervisedProgram> restartQueue = new PriorityQueue<SupervisedProgram>(11, new Comparator<SupervisedProgram>() {
+        @Override
+        public int compare(SupervisedProgram program1, SupervisedProgram program2) {
+            return Long.compare(program1.restartTime, program2.restartTime);
+        }
+    });
+    //How many supervised programs are running
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private volatile boolean isStopped = false;
+
+    protected Supervisor(LaunchEngine engine) {
+        this.engine = engine;
+    }
+
+    //Starts watching the entry's process. Called from the thread that started it
+    protected void watch(LaunchEntry entry) {
+        final Process process = entry.getProcess();
+        if (process == null) return;
+        //For documents, the process is the command that opened it, which exits right away, so there's nothing to watch
+        if (!FileLauncher.isExecutable(new File(entry.getProgram()))) {
+            Util.debugPrint(Util.DEBUG_TEST, "'"+entry.getProgram()+"' isn't a program, so it can't be restarted when it fails.");
+            return;
+        }
+        final SupervisedProgram program;
+        synchronized (programs) {
+            SupervisedProgram existingProgram = programs.get(entry);
+            if (existingProgram == null) {
+                existingProgram = new SupervisedProgram(entry);
+                programs.put(entry, existingProgram);
+            }
+            program = existingProgram;
+        }
+        program.process = process;
+        runningCount.incrementAndGet();
+        process.onExit().thenAccept(new Consumer<Process>() {
+            @Override
+            public void accept(Process exitedProcess) {
+                exitedPrograms.add(program);
+            }
+        });
+    }
+
+    //Returns whether there's anything left to supervise
+    protected boolean hasPrograms() {
+        return runningCount.get() > 0 || !restartQueue.isEmpty();
+    }
+
+    //Stops supervising. The programs keep running, they just won't be restarted anymore
+    protected void stop() {
+        isStopped = true;
+        //Wake up 'run' if it's waiting
+        exitedPrograms.add(new SupervisedProgram(null));
+    }
+
+    //Handles exits and restarts until there's nothing left to supervise, or until 'stop' is called
+    protected void run() {
+        Util.debugPrint(Util.DEBUG_BASIC, "Supervising "+runningCount.get()+" programs.");
+        while (!isStopped) {
+            long currentTime = System.currentTimeMillis();
+            while (!restartQueue.isEmpty() && restartQueue.peek().restartTime <= currentTime) {
+                restart(restartQueue.poll());
+            }
+            if (!hasPrograms()) break;
+
+            long timeout = restartQueue.isEmpty() ? Long.MAX_VALUE : restartQueue.peek().restartTime - currentTime;
+            try {
+                SupervisedProgram exitedProgram = exitedPrograms.poll(timeout, TimeUnit.MILLISECONDS);
+                if (exitedProgram != null && exitedProgram.entry != null) handleExit(exitedProgram);
+            } catch (InterruptedException ie) {
+                Util.debugPrint(Util.DEBUG_DETAILED, "Supervisor interrupted ("+ie+")");
+                break;
+            }
+        }
+        Util.debugPrint(Util.DEBUG_BASIC, "Nothing left to supervise.");
+    }
+
+    private void handleExit(SupervisedProgram program) {
+        runningCount.decrementAndGet();
+        String programLocation = program.entry.getProgram();
+        int exitValue = program.process.exitValue();
+        if (exitValue == 0) {
+            Util.debugPrint(Util.DEBUG_BASIC, "'"+programLocation+"' exited normally, so it won't be restarted.");
+            return;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        program.failureTimes.add(currentTime);
+        while (program.failureTimes.getFirst() < currentTime - CRASH_LOOP_WINDOW) program.failureTimes.removeFirst();
+        int recentFailures = program.failureTimes.size();
+        if (recentFailures >= CRASH_LOOP_LIMIT) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR: '"+programLocation+"' failed "+recentFailures+" times, not restarting it anymore.");
+            engine.addError("'"+programLocation+"' kept failing (exit code "+exitValue+"), so it was given up on after "
+                    +recentFailures+" tries in "+(CRASH_LOOP_WINDOW / 60000)+" minutes.");
+            return;
+        }
+        long backoff = Math.min(FIRST_BACKOFF << (recentFailures - 1), MAX_BACKOFF);
+        program.restartTime = currentTime + backoff;
+        restartQueue.add(program);
+        Util.debugPrint(Util.DEBUG_TEST, "'"+programLocation+"' failed with exit code "+exitValue+", restarting it in "+(backoff / 1000)+" seconds.");
+        engine.addEvent("'"+programLocation+"' failed with exit code "+exitValue+", restarting it in "+(backoff / 1000)+" seconds");
+    }
+
+    private void restart(SupervisedProgram program) {
+        Util.debugPrint(Util.DEBUG_TEST, "Restarting '"+program.entry.getProgram()+"'.");
+        if (engine.startProgram(program.entry)) watch(program.entry);
+    }
+
+
+    private static class SupervisedProgram {
+        private final LaunchEntry entry;
+        private volatile Process process;
+        //When the program failed recently, oldest first, to detect crash loops
+        private final LinkedList<Long> failureTimes = new LinkedList<Long>();
+        private long restartTime;
+
+        private SupervisedProgram(LaunchEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package startuphelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+//Decides when the system is idle enough to start the programs marked 'idle', like sync clients, indexers and updaters
+//The system is idle once both the CPU use (from '/proc/stat') and the busiest disk (from '/proc/diskstats') have stayed
+// below their limits for 'idleTime'. 'sample' has to be called regularly, every call compares the counters with the last one
+//Only works on Linux. Without '/proc/diskstats', only the CPU is looked at
+public class SystemIdleMonitor {
+    private static final String PROC_DISKSTATS = "/proc/diskstats";
+    //In percent
+    protected static final int DEFAULT_CPU_LIMIT = 10, DEFAULT_DISK_LIMIT = 10;
+    //In ms. How long the system has to stay idle, and how long an 'idle' entry waits for that at most
+    protected static final int DEFAULT_IDLE_TIME = 10000, DEFAULT_DEADLINE = 300000;
+    //How often to sample the counters, in ms
+    protected static final long SAMPLE_INTERVAL = 1000;
+
+    private final int cpuLimit, diskLimit, idleTime;
+    private final boolean isDiskSupported;
+    //The counters at the last sample: CPU total and busy ticks, and how long each disk has been busy in ms. Null before the first one
+    private long[] lastCpuTimes;
+    private Map<String, Long> lastDiskBusyTimes;
+    private long lastSampleTime;
+    //Since when the system has been below the limits, or -1 if it wasn't at the last sample
+    private long idleSince = -1;
+
+    public SystemIdleMonitor(int cpuLimit, int diskLimit, int idleTime) {
+        this.cpuLimit = cpuLimit;
+        this.diskLimit = diskLimit;
+        this.idleTime = idleTime;
+        isDiskSupported = new File(PROC_DISKSTATS).canRead();
+        Util.debugPrint(Util.DEBUG_DETAILED, "SystemIdleMonitor disk use supported: "+isDiskSupported);
+    }
+
+    protected static boolean isSupported() {
+        return new File(LoadMonitor.PROC_STAT).canRead();
+    }
+
+    //Reads the counters, and compares them with the last sample. Returns whether the system is idle now
+    protected synchronized boolean sample() {
+        try {
+            long time = System.currentTimeMillis();
+            long[] cpuTimes = LoadMonitor.readCpuTimes();
+            Map<String, Long> diskBusyTimes = isDiskSupported ? readDiskBusyTimes() : new HashMap<String, Long>();
+            if (lastCpuTimes != null && time > lastSampleTime) {
+                long total = cpuTimes[0] - lastCpuTimes[0];
+                int cpuUse = total > 0 ? (int) (100 * (cpuTimes[1] - lastCpuTimes[1]) / total) : 0;
+                //The disk counters are the time each disk was busy in ms, so compare the busiest one with the time between the samples
+                long diskBusyTime = 0;
+                for (Map.Entry<String, Long> disk : diskBusyTimes.entrySet()) {
+                    Long lastBusyTime = lastDiskBusyTimes.get(disk.getKey());
+                    if (lastBusyTime != null) diskBusyTime = Math.max(diskBusyTime, disk.getValue() - lastBusyTime);
+                }
+                int diskUse = (int) Math.min(100, 100 * diskBusyTime / (time - lastSampleTime));
+                boolean isBelowLimits = cpuUse < cpuLimit && diskUse < diskLimit;
+                Util.debugPrint(Util.DEBUG_VERBOSE, "Idle check: CPU "+cpuUse+"%, disk "+diskUse+"%, "+(isBelowLimits ? "idle" : "busy"));
+                if (!isBelowLimits) idleSince = -1;
+                else if (idleSince == -1) idleSince = lastSampleTime;
+            }
+            lastCpuTimes = cpuTimes;
+            lastDiskBusyTimes = diskBusyTimes;
+            lastSampleTime = time;
+        } catch (IOException ioe) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "ERROR while checking whether the system is idle: "+ioe);
+            idleSince = -1;
+        } catch (Exception e) {
+            Util.debugPrint(Util.DEBUG_ALWAYS, "Generic ERROR while checking whether the system is idle: "+e);
+            idleSince = -1;
+        }
+        return isIdle();
+    }
+
+    //Returns whether the system has been below the limits for long enough, as of the last sample
+    protected synchronized boolean isIdle() {
+        return idleSince != -1 && lastSampleTime - idleSince >= idleTime;
+    }
+    //Start over, after starting an 'idle' program. The next one waits until that program has settled down too
+    protected synchronized void reset() {
+        idleSince = -1;
+    }
+
+    //'/proc/diskstats' has a line per disk and partition, like '8 0 sda 1200 ...', the 13th field being the time spent on IO in ms
+    //Partitions are included too, but a partition is never busier than its disk. Loop and RAM devices aren't real disks
+    private static Map<String, Long> readDiskBusyTimes() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(PROC_DISKSTATS));
+        try {
+            Map<String, Long> busyTimes = new HashMap<String, Long>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 13 || fields[2].startsWith("loop") || fields[2].startsWith("ram") || fields[2].startsWith("zram")) continue;
+                busyTimes.put(fields[2], Long.parseLong(fields[12]));
+            }
+            return busyTimes;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -1,15 +1,11 @@
 package startuphelper;
 
 //A Class with methods both other classes can use
+//No AWT or Swing in here, since headless mode uses this class too. Those helpers are in GuiUtil
 
-import java.awt.Dimension;
-import java.awt.event.ActionListener;
-import javax.swing.JButton;
-import javax.swing.JLabel;
-import javax.swing.JPanel;
-import javax.swing.JSpinner;
-import javax.swing.SpinnerNumberModel;
-import javax.swing.event.ChangeListener;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class Util {
     protected static final String VERSION = "3.1.0-b5";
@@ -21,47 +17,25 @@ public abstract class Util {
     
     protected static final String DEFAULT_PROGRAMLIST_LOCATION = System.getProperty("user.dir") + "/StartupHelper.txt";
     
-    protected static void debugPrint(byte debugLevel, String message) {
-        debugPrint(debugLevel, DEFAULT_DEBUG_LEVEL, message);
-    }
-    protected static void debugPrint(byte messageDebugLevel, byte programDebugLevel, String message) {
-        if (messageDebugLevel <= programDebugLevel) System.out.println(message);
-        
-    }
+    private static byte debugLevel = DEFAULT_DEBUG_LEVEL;
+    //Where debug messages go. Headless mode can point this to a log file
+    private static PrintStream logStream = System.out;
     
-    protected static JButton createButton(String label, JPanel parent, ActionListener actionListener, boolean setEnabled) {
-        JButton button = new JButton(label);
-        //button.setFocusPainted(false);
-        parent.add(button);
-        button.addActionListener(actionListener);
-        button.setEnabled(setEnabled);
-        
-        return button;
+    protected static void setDebugLevel(byte level) {
+        debugLevel = level;
     }
-    protected static JButton createButton(String label, JPanel parent, ActionListener actionListener) {
-        return createButton(label, parent, actionListener, true);
+    protected static void setLogStream(PrintStream stream) {
+        logStream = stream;
     }
     
-    protected static JSpinner createSpinner(String labelString, JPanel parent, int value, int min, int max, int stepsize) {
-        JSpinner spinner = new JSpinner(new SpinnerNumberModel(value, min, max, stepsize));
-        spinner.setMaximumSize(new Dimension(100, spinner.getMaximumSize().height));
-        
-        //Create a label to go along with the spinner, explaining what it does
-        JLabel label = new JLabel(labelString);
-        label.setLabelFor(spinner);
-        
-        parent.add(label);
-        parent.add(spinner);
-        
-        return spinner;
-    }
-    protected static JSpinner createSpinner(String labelString, JPanel parent,ChangeListener changeListener,
-                                                                              int value, int min, int max, int stepsize) {
-        JSpinner spinner = createSpinner(labelString, parent, value, min, max, stepsize);
-        spinner.addChangeListener(changeListener);
-        return spinner;
+    protected static void debugPrint(byte debugLevel, String message) {
+        debugPrint(debugLevel, Util.debugLevel, message);
     }
+    protected static void debugPrint(byte messageDebugLevel, byte programDebugLevel, String message) {
+        if (messageDebugLevel <= programDebugLevel) logStream.println(message);
         
+    }
+    
     protected static int convertStringToInt(String string, int defaultNumber) {
         try {
             return Integer.parseInt(string);
@@ -72,8 +46,47 @@ public abstract class Util {
     }
     
     protected static String getArgumentFromLine(String line) {
-        String[] splitLine = line.split(" ");
-        if (splitLine.length > 1) return splitLine[1];
+        return getArgumentFromLine(line, 1);
+    }
+    //Returns the argument at 'index' (the command itself being index 0), or an empty string if there isn't one
+    protected static String getArgumentFromLine(String line, int index) {
+        List<String> splitLine = splitLine(line);
+        if (splitLine.size() > index) return splitLine.get(index);
         else return "";
     }
+    
+    //If a text is surrounded with quotes, as it should be if it's a file location with spaces, remove them
+    protected static String stripQuotes(String text) {
+        if (text.startsWith("\"") || text.startsWith("'")) text = text.substring(1);
+        if (text.endsWith("\"") || text.endsWith("'")) text = text.substring(0, text.length() - 1);
+        return text;
+    }
+    
+    //Splits a line into words separated by whitespace. Anything between double quotes is kept together, without the quotes
+    protected static List<String> splitLine(String line) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        boolean inQuotes = false, hasWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+                //An empty pair of quotes is still an (empty) word
+                hasWord = true;
+            }
+            else if (Character.isWhitespace(c) && !inQuotes) {
+                if (hasWord) words.add(word.toString());
+                word.setLength(0);
+                hasWord = false;
+            }
+            else {
+                word.append(c);
+                hasWord = true;
+            }
+        }
+        if (hasWord) words.add(word.toString());
+        //Make sure there's always a first word, so callers can look at the command without checking
+        if (words.isEmpty()) words.add("");
+        return words;
+    }
 }
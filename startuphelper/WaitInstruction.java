@@ -0,0 +1,22 @@
+package startuphelper;
+
+//Wait a bit longer before the next program. Written as 'Wait [seconds]'
+class WaitInstruction extends Instruction {
+    private static final long serialVersionUID = 1L;
+    private final int waitTime;
+
+    WaitInstruction(int lineNumber, int waitTime) {
+        super(lineNumber);
+        this.waitTime = waitTime;
+    }
+
+    //In ms
+    protected int getWaitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "Wait " + waitTime / 1000;
+    }
+}
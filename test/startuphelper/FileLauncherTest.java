@@ -0,0 +1,50 @@
+package startuphelper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+//Checks which files FileLauncher starts by themselves on Linux, where being marked executable isn't enough
+@EnabledOnOs(OS.LINUX)
+class FileLauncherTest {
+    @TempDir
+    Path directory;
+
+    private File writeFile(String name, byte[] content, boolean executable) throws IOException {
+        File file = directory.resolve(name).toFile();
+        Files.write(file.toPath(), content);
+        assertTrue(file.setExecutable(executable));
+        return file;
+    }
+    private File writeFile(String name, String content, boolean executable) throws IOException {
+        return writeFile(name, content.getBytes(StandardCharsets.UTF_8), executable);
+    }
+
+    @Test
+    void scriptsAndBinariesAreExecutable() throws IOException {
+        assertTrue(FileLauncher.isExecutable(writeFile("script.sh", "#!/bin/sh\nexit 0\n", true)));
+        assertTrue(FileLauncher.isExecutable(writeFile("program", new byte[] {0x7f, 'E', 'L', 'F', 2, 1, 1}, true)));
+    }
+
+    @Test
+    void documentsMarkedExecutableAreNot() throws IOException {
+        //Like every file on a FAT or NTFS disk
+        assertFalse(FileLauncher.isExecutable(writeFile("manual.pdf", "%PDF-1.7\n", true)));
+        assertFalse(FileLauncher.isExecutable(writeFile("notes.txt", "#1 buy milk\n", true)));
+        assertFalse(FileLauncher.isExecutable(writeFile("empty", "", true)));
+    }
+
+    @Test
+    void filesThatArentMarkedExecutableAreNot() throws IOException {
+        assertFalse(FileLauncher.isExecutable(writeFile("script.sh", "#!/bin/sh\nexit 0\n", false)));
+        assertFalse(FileLauncher.isExecutable(directory.toFile()));
+    }
+}
@@ -0,0 +1,140 @@
+package startuphelper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+//Checks LaunchScheduler.merge, which switches a running scheduler over to a reloaded program list
+class LaunchSchedulerTest {
+    private static final int START_WAIT = 1000, BETWEEN_WAIT = 2000;
+
+    private static List<Instruction> getInstructions(String... lines) {
+        return ProgramlistParser.parse(Arrays.asList(lines)).getInstructions();
+    }
+    private static LaunchScheduler createScheduler(String... lines) {
+        LaunchScheduler scheduler = new LaunchScheduler(getInstructions(lines), START_WAIT, BETWEEN_WAIT, 1);
+        scheduler.start(0);
+        return scheduler;
+    }
+    private static List<LaunchEntry> getAllEntries(LaunchScheduler scheduler) {
+        return scheduler.getUpcomingEntries(Integer.MAX_VALUE);
+    }
+    //Starts the first waiting entry, which has to be the program at 'program'
+    private static LaunchEntry launchNext(LaunchScheduler scheduler, String program, long time) {
+        LaunchEntry entry = scheduler.pollReadyEntry(time);
+        assertNotNull(entry, "Nothing is ready at "+time);
+        assertEquals(program, entry.getProgram());
+        scheduler.setLaunched(entry, true, time);
+        return entry;
+    }
+
+    @Test
+    void unchangedListKeepsEverything() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/a", "/usr/bin/b", "/usr/bin/c");
+        List<LaunchEntry> entries = getAllEntries(scheduler);
+        launchNext(scheduler, "/usr/bin/a", START_WAIT);
+
+        assertEquals(3, scheduler.merge(getInstructions("/usr/bin/a", "/usr/bin/b", "/usr/bin/c"), BETWEEN_WAIT));
+        assertEquals(3, scheduler.getEntryCount());
+        assertEquals(2, scheduler.getRemainingCount());
+        //The same entries, so the countdown for 'b' keeps going
+        assertSame(entries.get(1), scheduler.getNextEntry());
+        assertEquals(START_WAIT + BETWEEN_WAIT, scheduler.getExpectedReadyTime(entries.get(1)));
+    }
+
+    @Test
+    void startedEntriesStayStartedAndNewOnesAreAdded() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/a", "/usr/bin/b", "/usr/bin/c");
+        LaunchEntry a = launchNext(scheduler, "/usr/bin/a", START_WAIT);
+        LaunchEntry c = getAllEntries(scheduler).get(1);
+
+        //'b' is removed and 'd' is added
+        assertEquals(2, scheduler.merge(getInstructions("/usr/bin/a", "/usr/bin/c", "/usr/bin/d"), BETWEEN_WAIT));
+        assertEquals(3, scheduler.getEntryCount());
+        List<LaunchEntry> upcoming = getAllEntries(scheduler);
+        assertEquals(2, upcoming.size());
+        assertSame(c, upcoming.get(0));
+        assertEquals("/usr/bin/d", upcoming.get(1).getProgram());
+        assertFalse(a.isWaiting());
+        //'c' now directly follows 'a', so it's counted from when 'a' was started
+        assertEquals(Arrays.asList(a), c.getDependencies());
+        assertEquals(START_WAIT + BETWEEN_WAIT, scheduler.getExpectedReadyTime(c));
+    }
+
+    @Test
+    void startedEntriesThatWereRemovedAreDropped() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/a", "/usr/bin/b");
+        launchNext(scheduler, "/usr/bin/a", START_WAIT);
+
+        assertEquals(1, scheduler.merge(getInstructions("/usr/bin/b"), BETWEEN_WAIT));
+        assertEquals(1, scheduler.getEntryCount());
+        //Without 'a' above it, 'b' is the first entry again, which starts after StartWait
+        LaunchEntry b = scheduler.getNextEntry();
+        assertTrue(b.getDependencies().isEmpty());
+        assertEquals(START_WAIT, scheduler.getExpectedReadyTime(b));
+    }
+
+    @Test
+    void waitingEntriesGetTheNewWaits() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/a", "Wait 5", "/usr/bin/b");
+        LaunchEntry a = getAllEntries(scheduler).get(0);
+        LaunchEntry b = getAllEntries(scheduler).get(1);
+        launchNext(scheduler, "/usr/bin/a", START_WAIT);
+
+        //The first 'BetweenWait' is the one for the whole list, the second one changes it from there on
+        assertEquals(2, scheduler.merge(getInstructions("BetweenWait 2", "Wait 30", "/usr/bin/a", "BetweenWait 4", "/usr/bin/b"), BETWEEN_WAIT));
+        assertSame(b, scheduler.getNextEntry());
+        assertEquals(4000, b.getBetweenWait());
+        assertEquals(0, b.getExtraWait());
+        //What already happened isn't changed
+        assertEquals(0, a.getExtraWait());
+        assertEquals(START_WAIT, a.getLaunchTime());
+        assertEquals(START_WAIT + 4000, scheduler.getExpectedReadyTime(b));
+    }
+
+    @Test
+    void changedLinesAreNewEntries() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/a | name=mail", "?/usr/bin/b", "/usr/bin/c");
+        LaunchEntry a = launchNext(scheduler, "/usr/bin/a", START_WAIT);
+        LaunchEntry b = getAllEntries(scheduler).get(0);
+
+        //Other attributes, or no longer asking, make it another entry
+        assertEquals(1, scheduler.merge(getInstructions("/usr/bin/a | name=post", "/usr/bin/b", "/usr/bin/c"), BETWEEN_WAIT));
+        List<LaunchEntry> upcoming = getAllEntries(scheduler);
+        assertEquals(3, upcoming.size());
+        assertNotSame(a, upcoming.get(0));
+        assertNotSame(b, upcoming.get(1));
+        assertFalse(upcoming.get(1).isAsk());
+    }
+
+    @Test
+    void repeatedLinesAreMatchedFromTopToBottom() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/sync", "/usr/bin/sync");
+        LaunchEntry first = launchNext(scheduler, "/usr/bin/sync", START_WAIT);
+        LaunchEntry second = getAllEntries(scheduler).get(0);
+
+        assertEquals(2, scheduler.merge(getInstructions("/usr/bin/sync", "/usr/bin/sync", "/usr/bin/sync"), BETWEEN_WAIT));
+        assertEquals(3, scheduler.getEntryCount());
+        List<LaunchEntry> upcoming = getAllEntries(scheduler);
+        assertEquals(2, upcoming.size());
+        assertSame(second, upcoming.get(0));
+        assertEquals(Arrays.asList(first), second.getDependencies());
+        assertEquals(Arrays.asList(second), upcoming.get(1).getDependencies());
+    }
+
+    @Test
+    void afterPointsToTheKeptEntries() {
+        LaunchScheduler scheduler = createScheduler("/usr/bin/mail | name=mail", "/usr/bin/news");
+        LaunchEntry mail = launchNext(scheduler, "/usr/bin/mail", START_WAIT);
+
+        assertEquals(2, scheduler.merge(getInstructions("/usr/bin/mail | name=mail", "/usr/bin/news", "/usr/bin/chat | after=mail"),
+                BETWEEN_WAIT));
+        LaunchEntry chat = getAllEntries(scheduler).get(1);
+        assertEquals("/usr/bin/chat", chat.getProgram());
+        assertEquals(Arrays.asList(mail), chat.getDependencies());
+        //So 'chat' is ready at the same time as 'news', right after 'mail'
+        assertEquals(START_WAIT + BETWEEN_WAIT, scheduler.getExpectedReadyTime(chat));
+    }
+}
@@ -0,0 +1,109 @@
+package startuphelper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+//Checks when ProgramlistParser.load uses the cached plan next to the program list, and when it parses the list again
+//To tell them apart, the tests put a plan in the cache that doesn't match the list
+class ProgramlistCacheTest {
+    @TempDir
+    Path directory;
+    private File programlistFile, cacheFile;
+
+    @BeforeEach
+    void writeProgramlist() throws IOException {
+        programlistFile = directory.resolve("StartupHelper.txt").toFile();
+        cacheFile = new File(programlistFile.getPath() + ProgramlistParser.CACHE_EXTENSION);
+        writeProgramlist("/usr/bin/mail | logsize=64 output=log:/tmp/mail.log");
+    }
+    private void writeProgramlist(String... lines) throws IOException {
+        Files.write(programlistFile.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+    private LaunchPlan load() throws IOException {
+        return ProgramlistParser.load(programlistFile.getPath());
+    }
+    private static String getFirstProgram(LaunchPlan plan) {
+        return ((LaunchInstruction) plan.getInstructions().get(0)).getProgram();
+    }
+
+    //Replaces the cached plan with one for '/usr/bin/cached', keeping the version and hash of the cache that's there,
+    // unless 'versionChange' says otherwise
+    private void forgeCache(int versionChange) throws IOException {
+        int version;
+        String hash;
+        ObjectInputStream input = new ObjectInputStream(new FileInputStream(cacheFile));
+        try {
+            version = input.readInt();
+            hash = input.readUTF();
+        } finally {
+            input.close();
+        }
+        ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(cacheFile));
+        try {
+            output.writeInt(version + versionChange);
+            output.writeUTF(hash);
+            output.writeObject(ProgramlistParser.parse(Arrays.asList("/usr/bin/cached")));
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void parsingWritesTheCache() throws IOException {
+        assertFalse(cacheFile.exists());
+        LaunchPlan plan = load();
+        assertTrue(cacheFile.exists());
+        assertEquals("/usr/bin/mail", getFirstProgram(plan));
+        //The cached plan is the same as the parsed one
+        LaunchPlan cachedPlan = load();
+        assertEquals(plan.getLaunchCount(), cachedPlan.getLaunchCount());
+        assertEquals(((LaunchInstruction) plan.getInstructions().get(0)).getAttributes(),
+                ((LaunchInstruction) cachedPlan.getInstructions().get(0)).getAttributes());
+    }
+
+    @Test
+    void unchangedListUsesTheCache() throws IOException {
+        load();
+        forgeCache(0);
+        assertEquals("/usr/bin/cached", getFirstProgram(load()));
+    }
+
+    @Test
+    void changedListIsParsedAgain() throws IOException {
+        load();
+        forgeCache(0);
+        writeProgramlist("/usr/bin/chat");
+        assertEquals("/usr/bin/chat", getFirstProgram(load()));
+        //And the new plan replaces the old cache
+        assertEquals("/usr/bin/chat", getFirstProgram(load()));
+    }
+
+    @Test
+    void cacheOfAnotherVersionIsIgnored() throws IOException {
+        load();
+        forgeCache(-1);
+        assertEquals("/usr/bin/mail", getFirstProgram(load()));
+    }
+
+    @Test
+    void brokenCacheIsIgnored() throws IOException {
+        load();
+        Files.write(cacheFile.toPath(), "not a plan".getBytes(StandardCharsets.UTF_8));
+        assertEquals("/usr/bin/mail", getFirstProgram(load()));
+        cacheFile.delete();
+        assertEquals("/usr/bin/mail", getFirstProgram(load()));
+    }
+}
@@ -0,0 +1,131 @@
+package startuphelper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+//Checks that every change to the Editor's list is one undo step, and that undo and redo put the lines back exactly
+class ProgramlistModelTest {
+    private ProgramlistModel model;
+
+    @BeforeEach
+    void createModel() {
+        model = new ProgramlistModel();
+        model.setLines(Arrays.asList("StartWait 10", "/usr/bin/mail", "/usr/bin/chat", "/usr/bin/news", "/usr/bin/music"));
+    }
+    private static List<String> getLines(ProgramlistModel model) {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < model.getSize(); i++) lines.add(model.getElementAt(i));
+        return lines;
+    }
+
+    @Test
+    void loadingCanNotBeUndone() {
+        assertFalse(model.canUndo());
+        assertFalse(model.canRedo());
+        model.undo();
+        assertEquals(5, model.getSize());
+    }
+
+    @Test
+    void insertAndSetAreUndoneAndRedone() {
+        List<String> original = getLines(model);
+        model.insert(1, "/usr/bin/backup");
+        model.set(0, "StartWait 20");
+        List<String> changed = getLines(model);
+        assertEquals(Arrays.asList("StartWait 20", "/usr/bin/backup", "/usr/bin/mail", "/usr/bin/chat", "/usr/bin/news", "/usr/bin/music"), changed);
+
+        model.undo();
+        assertEquals("StartWait 10", model.getElementAt(0));
+        assertEquals(6, model.getSize());
+        model.undo();
+        assertEquals(original, getLines(model));
+        assertFalse(model.canUndo());
+
+        model.redo();
+        model.redo();
+        assertEquals(changed, getLines(model));
+        assertFalse(model.canRedo());
+    }
+
+    @Test
+    void removingSeveralLinesIsOneStep() {
+        List<String> original = getLines(model);
+        model.remove(new int[] {1, 3, 4});
+        assertEquals(Arrays.asList("StartWait 10", "/usr/bin/chat"), getLines(model));
+        model.undo();
+        assertEquals(original, getLines(model));
+        assertFalse(model.canUndo());
+    }
+
+    @Test
+    void movingLinesIsOneStep() {
+        List<String> original = getLines(model);
+        assertTrue(model.move(new int[] {2, 3}, -1));
+        assertEquals(Arrays.asList("StartWait 10", "/usr/bin/chat", "/usr/bin/news", "/usr/bin/mail", "/usr/bin/music"), getLines(model));
+        //The last line can't move down
+        assertFalse(model.move(new int[] {3, 4}, 1));
+        model.undo();
+        assertEquals(original, getLines(model));
+        assertFalse(model.canUndo());
+    }
+
+    @Test
+    void commentingIsUndoneAndRedone() {
+        List<String> original = getLines(model);
+        assertTrue(model.toggleComment(new int[] {1, 2}));
+        assertEquals("#/usr/bin/mail", model.getElementAt(1));
+        assertEquals("#/usr/bin/chat", model.getElementAt(2));
+        //All selected lines are comments now, so the next toggle uncomments them
+        assertFalse(model.toggleComment(new int[] {1, 2}));
+        assertEquals(original, getLines(model));
+
+        model.undo();
+        assertEquals("#/usr/bin/mail", model.getElementAt(1));
+        model.undo();
+        assertEquals(original, getLines(model));
+        model.redo();
+        assertEquals("#/usr/bin/chat", model.getElementAt(2));
+    }
+
+    @Test
+    void newChangeDropsTheRedoSteps() {
+        model.insert(0, "# Programs");
+        model.undo();
+        assertTrue(model.canRedo());
+        model.set(1, "/usr/bin/mutt");
+        assertFalse(model.canRedo());
+        model.undo();
+        assertEquals("/usr/bin/mail", model.getElementAt(1));
+        assertEquals(5, model.getSize());
+    }
+
+    @Test
+    void undoOnlyReportsTheChangedRange() {
+        model.remove(new int[] {3});
+        final List<String> events = new ArrayList<String>();
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.add("added " + e.getIndex0() + "-" + e.getIndex1());
+            }
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("removed " + e.getIndex0() + "-" + e.getIndex1());
+            }
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+            }
+        });
+        model.undo();
+        assertEquals(Arrays.asList("added 3-3"), events);
+        assertEquals("/usr/bin/news", model.getElementAt(3));
+    }
+}
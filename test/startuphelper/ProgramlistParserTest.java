@@ -0,0 +1,120 @@
+package startuphelper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+//Checks the attributes after the '|' of a program line, and the problems the parser reports for them
+class ProgramlistParserTest {
+    private static LaunchPlan parse(String... lines) {
+        return ProgramlistParser.parse(Arrays.asList(lines));
+    }
+    private static LaunchInstruction getLaunch(LaunchPlan plan, int index) {
+        int launchIndex = 0;
+        for (Instruction instruction : plan.getInstructions()) {
+            if (!(instruction instanceof LaunchInstruction)) continue;
+            if (launchIndex++ == index) return (LaunchInstruction) instruction;
+        }
+        fail("There's no program number "+index+" in the plan");
+        return null;
+    }
+    //Returns whether one of the plan's problems is about line 'lineNumber' and contains 'text'
+    private static boolean hasDiagnostic(LaunchPlan plan, int lineNumber, String text) {
+        for (String diagnostic : plan.getDiagnostics()) {
+            if (diagnostic.startsWith("Line "+lineNumber+":") && diagnostic.contains(text)) return true;
+        }
+        return false;
+    }
+
+    @Test
+    void validAttributesAreKeptWithoutProblems() {
+        LaunchPlan plan = parse("/usr/bin/mail | name=mail group=messaging ready=port:8080 timeout=5",
+                "?/usr/bin/chat | after=mail restart=On-Failure output=log:/tmp/chat.log logsize=64 idle");
+        assertEquals(0, plan.getDiagnostics().size(), plan.getDiagnostics().toString());
+        assertEquals(2, plan.getLaunchCount());
+
+        LaunchInstruction mail = getLaunch(plan, 0);
+        assertEquals("/usr/bin/mail", mail.getProgram());
+        assertEquals("mail", mail.getAttribute("name"));
+        assertEquals("messaging", mail.getAttribute("group"));
+        assertEquals("port:8080", mail.getAttribute("ready"));
+        //Seconds in the list, ms in the plan
+        assertEquals("5000", mail.getAttribute("timeout"));
+
+        LaunchInstruction chat = getLaunch(plan, 1);
+        assertTrue(chat instanceof AskInstruction);
+        assertEquals("/usr/bin/chat", chat.getProgram());
+        assertEquals("on-failure", chat.getAttribute("restart"));
+        assertEquals("log:/tmp/chat.log", chat.getAttribute("output"));
+        assertEquals("64", chat.getAttribute("logsize"));
+        assertEquals(String.valueOf(SystemIdleMonitor.DEFAULT_DEADLINE), chat.getAttribute("idle"));
+    }
+
+    @Test
+    void unknownAttributesAreReportedAndIgnored() {
+        LaunchPlan plan = parse("/usr/bin/mail | name=mail colour=blue");
+        assertTrue(hasDiagnostic(plan, 1, "Unknown attribute 'colour=blue'"), plan.getDiagnostics().toString());
+        LaunchInstruction mail = getLaunch(plan, 0);
+        assertEquals("mail", mail.getAttribute("name"));
+        assertFalse(mail.getAttributes().containsKey("colour"));
+    }
+
+    @Test
+    void invalidValuesAreReportedAndDropped() {
+        LaunchPlan plan = parse("/usr/bin/a | ready=port:99999",
+                "/usr/bin/b | ready=sometime",
+                "/usr/bin/c | restart=always",
+                "/usr/bin/d | output=log:");
+        assertTrue(hasDiagnostic(plan, 1, "Invalid readiness probe 'port:99999'"), plan.getDiagnostics().toString());
+        assertTrue(hasDiagnostic(plan, 2, "Invalid readiness probe 'sometime'"), plan.getDiagnostics().toString());
+        assertTrue(hasDiagnostic(plan, 3, "Invalid restart 'always'"), plan.getDiagnostics().toString());
+        assertTrue(hasDiagnostic(plan, 4, "Invalid output 'log:'"), plan.getDiagnostics().toString());
+        assertNull(getLaunch(plan, 0).getAttribute("ready"));
+        assertNull(getLaunch(plan, 1).getAttribute("ready"));
+        assertNull(getLaunch(plan, 2).getAttribute("restart"));
+        assertNull(getLaunch(plan, 3).getAttribute("output"));
+    }
+
+    @Test
+    void invalidNumbersFallBackToTheDefaults() {
+        LaunchPlan plan = parse("/usr/bin/a | ready=cpu:20 timeout=soon", "/usr/bin/b | output=log:/tmp/b.log logsize=0",
+                "/usr/bin/c | idle=-5");
+        assertTrue(hasDiagnostic(plan, 1, "'soon' isn't a number"), plan.getDiagnostics().toString());
+        assertEquals(String.valueOf(ReadinessProbe.DEFAULT_TIMEOUT), getLaunch(plan, 0).getAttribute("timeout"));
+        assertTrue(hasDiagnostic(plan, 2, "Log size has to be larger than 0"), plan.getDiagnostics().toString());
+        assertEquals(String.valueOf(ProcessOutput.DEFAULT_LOG_SIZE), getLaunch(plan, 1).getAttribute("logsize"));
+        assertTrue(hasDiagnostic(plan, 3, "can't be negative"), plan.getDiagnostics().toString());
+        assertEquals(String.valueOf(SystemIdleMonitor.DEFAULT_DEADLINE), getLaunch(plan, 2).getAttribute("idle"));
+    }
+
+    @Test
+    void afterOnlyAcceptsNamesFromAbove() {
+        LaunchPlan plan = parse("/usr/bin/chat | after=mail", "/usr/bin/mail | name=mail", "/usr/bin/news | after=mail,chat");
+        assertTrue(hasDiagnostic(plan, 1, "should start after 'mail'"), plan.getDiagnostics().toString());
+        assertFalse(hasDiagnostic(plan, 3, "'mail'"), plan.getDiagnostics().toString());
+        assertTrue(hasDiagnostic(plan, 3, "should start after 'chat'"), plan.getDiagnostics().toString());
+        //'none' isn't a name
+        assertEquals(0, parse("/usr/bin/chat | after=none").getDiagnostics().size());
+    }
+
+    @Test
+    void namesAndGroupsCanOnlyBeUsedOnce() {
+        LaunchPlan plan = parse("/usr/bin/a | name=first", "/usr/bin/b | name=first",
+                "/usr/bin/c | group=tools", "/usr/bin/d | group=tools", "/usr/bin/e", "/usr/bin/f | group=tools");
+        assertTrue(hasDiagnostic(plan, 2, "The name 'first' is used more than once"), plan.getDiagnostics().toString());
+        //Consecutive lines of the same group are one group
+        assertFalse(hasDiagnostic(plan, 4, "Group"), plan.getDiagnostics().toString());
+        assertTrue(hasDiagnostic(plan, 6, "Group 'tools' is used more than once"), plan.getDiagnostics().toString());
+    }
+
+    @Test
+    void unknownClassesAreReported() {
+        LaunchPlan plan = parse("Class heavy nice=10", "/usr/bin/a | class=heavy", "/usr/bin/b | class=light",
+                "/usr/bin/c | class=" + ResourceClass.BACKGROUND);
+        List<String> diagnostics = plan.getDiagnostics();
+        assertEquals(1, diagnostics.size(), diagnostics.toString());
+        assertTrue(hasDiagnostic(plan, 3, "There's no class 'light'"), diagnostics.toString());
+    }
+}